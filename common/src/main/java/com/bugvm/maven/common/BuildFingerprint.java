@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Computes a SHA-1 hash over the inputs of a BugVM build. Small config files
+ * are hashed by content. Classpath entries are hashed by path, size and last
+ * modification time, directories recursively, which is what Maven itself uses
+ * to decide whether an artifact has changed.
+ */
+public class BuildFingerprint {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MessageDigest digest;
+    private String hash;
+
+    public BuildFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a named value. {@code null} values are hashed as such so that
+     * setting and unsetting a value changes the fingerprint.
+     */
+    public BuildFingerprint add(String name, Object value) {
+        update(name + "=" + value);
+        return this;
+    }
+
+    /**
+     * Adds the contents of {@code file} or a marker if it doesn't exist.
+     */
+    public BuildFingerprint addContents(File file) throws IOException {
+        if (file != null && file.isFile()) {
+            update("file:" + file.getAbsolutePath());
+            digest.update(FileUtils.readFileToByteArray(file));
+        } else {
+            update("nofile:" + file);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a classpath entry, either a jar file or a directory of classes.
+     */
+    public BuildFingerprint addClasspathEntry(File file) {
+        update("entry:" + file.getAbsolutePath());
+        addTree(file);
+        return this;
+    }
+
+    private void addTree(File file) {
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    File f = new File(file, name);
+                    update(name + (f.isDirectory() ? "/" : ""));
+                    addTree(f);
+                }
+            }
+        } else if (file.exists()) {
+            update(file.length() + ":" + file.lastModified());
+        }
+    }
+
+    private void update(String s) {
+        if (hash != null) {
+            throw new IllegalStateException("Fingerprint has already been computed");
+        }
+        digest.update(s.getBytes(UTF8));
+        digest.update((byte) 0);
+    }
+
+    public String getHash() {
+        if (hash == null) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            hash = sb.toString();
+        }
+        return hash;
+    }
+
+    /**
+     * Returns {@code true} if {@code file} contains this fingerprint.
+     */
+    public boolean matches(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            return getHash().equals(FileUtils.readFileToString(file, "UTF-8").trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void write(File file) throws IOException {
+        FileUtils.writeStringToFile(file, getHash(), "UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return getHash();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.common;
+
+/**
+ * Sizes the compiler for the amount of memory it may use. Each compiler
+ * thread is assumed to need about {@link #MEMORY_PER_THREAD}. A compiler
+ * running in this JVM can't use more than the JVM's maximum heap size, so a
+ * larger budget is capped at that. Forked compilers get heaps of their own
+ * and share the whole budget.
+ */
+public class MemoryBudget {
+
+    public static final long MB = 1024 * 1024;
+    public static final long MEMORY_PER_THREAD = 256 * MB;
+
+    private final long budget;
+    private final long maxMemory;
+
+    /**
+     * Creates a budget of {@code megabytes} MB. 0 or less uses the maximum
+     * heap size of this JVM.
+     */
+    public MemoryBudget(long megabytes) {
+        this(megabytes, Runtime.getRuntime().maxMemory());
+    }
+
+    MemoryBudget(long megabytes, long maxMemory) {
+        this.budget = megabytes > 0 ? megabytes * MB : maxMemory;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns the budget in bytes of a compiler running in this JVM.
+     */
+    public long getInProcess() {
+        return Math.min(budget, maxMemory);
+    }
+
+    /**
+     * Returns {@code true} if the budget is larger than the maximum heap
+     * size of this JVM.
+     */
+    public boolean isCapped() {
+        return budget > maxMemory;
+    }
+
+    /**
+     * Returns the maximum heap size in bytes of each of {@code forks}
+     * compilers running at the same time in JVMs of their own.
+     */
+    public long getForkedHeap(int forks) {
+        return Math.max(MEMORY_PER_THREAD, budget / forks);
+    }
+
+    /**
+     * Returns the number of compiler threads which {@code bytes} of memory
+     * accommodate, at least 1.
+     */
+    public static int getAffordableThreads(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / MEMORY_PER_THREAD));
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.common;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.IOUtils;
+import com.bugvm.compiler.Version;
+import com.bugvm.compiler.target.ios.ProvisioningProfile;
+import com.bugvm.compiler.target.ios.SigningIdentity;
+
+/**
+ * Looks up the installed signing identities and provisioning profiles on
+ * background threads so the lookups overlap with the rest of the build
+ * configuration. The results are kept for the lifetime of the JVM, i.e. for
+ * all modules of a reactor build or all runners of a test run, and reused as
+ * long as the names, sizes and modification times of the files in the
+ * directory they are read from are unchanged. Adding, removing or replacing a
+ * profile or keychain file makes the next lookup list them again. For the
+ * default keychains directory the keychains in the user's search list, e.g.
+ * {@code /Library/Keychains/System.keychain}, are checked as well.
+ * <p>
+ * Profiles are read from the {@code *.mobileprovision} files in the profiles
+ * directory. Identities are looked up in the keychains in the keychains
+ * directory. For the default keychains directory the user's keychain search
+ * list is used instead, which also contains the system keychains.
+ */
+public class SigningDiscovery {
+
+    public static final File PROVISIONING_PROFILES_DIR = new File(System.getProperty("user.home"),
+            "Library/MobileDevice/Provisioning Profiles");
+    public static final File KEYCHAINS_DIR = new File(System.getProperty("user.home"), "Library/Keychains");
+    public static final File SYSTEM_KEYCHAIN = new File("/Library/Keychains/System.keychain");
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BugVM signing discovery");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final Map<String, Entry<?>> cache = new HashMap<>();
+
+    private static class Entry<T> {
+        final String key;
+        final FutureTask<T> value;
+
+        Entry(String key, FutureTask<T> value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final File profilesDir;
+    private final File keychainsDir;
+
+    public SigningDiscovery() {
+        this(PROVISIONING_PROFILES_DIR, KEYCHAINS_DIR);
+    }
+
+    /**
+     * Creates a discovery which reads the profiles and keychains in the
+     * specified directories.
+     */
+    public SigningDiscovery(File profilesDir, File keychainsDir) {
+        this.profilesDir = profilesDir;
+        this.keychainsDir = keychainsDir;
+    }
+
+    public Future<List<ProvisioningProfile>> provisioningProfiles() {
+        return lookup("profiles", profilesDir, false, new Callable<List<ProvisioningProfile>>() {
+            public List<ProvisioningProfile> call() throws Exception {
+                return listProvisioningProfiles(profilesDir);
+            }
+        });
+    }
+
+    public Future<List<SigningIdentity>> signingIdentities() {
+        boolean searchList = isDefaultKeychainsDir(keychainsDir);
+        return lookup("identities", keychainsDir, searchList, new Callable<List<SigningIdentity>>() {
+            public List<SigningIdentity> call() throws Exception {
+                return listSigningIdentities(keychainsDir);
+            }
+        });
+    }
+
+    private <T> Future<T> lookup(final String name, final File dir, final boolean searchList,
+            final Callable<T> loader) {
+
+        return executor.submit(new Callable<T>() {
+            @SuppressWarnings("unchecked")
+            public T call() throws Exception {
+                String key = fingerprint(dir, searchList ? getKeychainSearchList() : Collections.<File>emptyList());
+                String cacheKey = name + ":" + dir.getAbsolutePath();
+                FutureTask<T> task = null;
+                Entry<T> entry;
+                synchronized (cache) {
+                    entry = (Entry<T>) cache.get(cacheKey);
+                    if (entry == null || !entry.key.equals(key)) {
+                        task = new FutureTask<>(loader);
+                        entry = new Entry<>(key, task);
+                        cache.put(cacheKey, entry);
+                    }
+                }
+                if (task != null) {
+                    task.run();
+                }
+                try {
+                    return entry.value.get();
+                } catch (ExecutionException e) {
+                    synchronized (cache) {
+                        if (cache.get(cacheKey) == entry) {
+                            cache.remove(cacheKey);
+                        }
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Same as {@link ProvisioningProfile#list()} but for the profiles in
+     * {@code dir}. The profiles are parsed in parallel. Expired profiles are
+     * skipped.
+     */
+    static List<ProvisioningProfile> listProvisioningProfiles(File dir) throws Exception {
+        File[] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isFile() && f.getName().endsWith(".mobileprovision");
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        final Method create = getMethod(ProvisioningProfile.class, "create", File.class);
+        List<Future<ProvisioningProfile>> futures = new ArrayList<>();
+        for (final File file : files) {
+            futures.add(executor.submit(new Callable<ProvisioningProfile>() {
+                public ProvisioningProfile call() throws Exception {
+                    return (ProvisioningProfile) invoke(create, file);
+                }
+            }));
+        }
+        Date now = new Date();
+        List<ProvisioningProfile> result = new ArrayList<>();
+        for (Future<ProvisioningProfile> future : futures) {
+            ProvisioningProfile profile = future.get();
+            if (profile.getExpirationDate().after(now)) {
+                result.add(profile);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Same as {@link SigningIdentity#list()} but for the keychains in
+     * {@code dir}. The default keychains directory uses the keychain search
+     * list like {@link SigningIdentity#list()} does.
+     */
+    @SuppressWarnings("unchecked")
+    static List<SigningIdentity> listSigningIdentities(File dir) throws Exception {
+        if (isDefaultKeychainsDir(dir)) {
+            return SigningIdentity.list();
+        }
+        File[] keychains = dir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isFile() && (f.getName().endsWith(".keychain") || f.getName().endsWith(".keychain-db"));
+            }
+        });
+        if (keychains == null || keychains.length == 0) {
+            // security falls back to the search list without any keychains
+            return Collections.emptyList();
+        }
+        Arrays.sort(keychains);
+        List<String> command = new ArrayList<>(Arrays.asList("security", "find-identity", "-v", "-p", "codesigning"));
+        for (File keychain : keychains) {
+            command.add(keychain.getAbsolutePath());
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        InputStream in = process.getInputStream();
+        try {
+            output = IOUtils.toString(in, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("Command " + command + " failed with exit code " + exitCode + ": " + output);
+        }
+        Method parse = getMethod(SigningIdentity.class, "parse", String.class);
+        return (List<SigningIdentity>) invoke(parse, output);
+    }
+
+    private static boolean isDefaultKeychainsDir(File dir) {
+        return dir.getAbsoluteFile().equals(KEYCHAINS_DIR.getAbsoluteFile());
+    }
+
+    /**
+     * Looks up one of the private methods of the compiler which parse a
+     * profile or the identities printed by {@code security}.
+     */
+    private static Method getMethod(Class<?> clazz, String name, Class<?> paramType) {
+        try {
+            Method method = clazz.getDeclaredMethod(name, paramType);
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(String.format(
+                    "The BugVM compiler on the classpath (%s) has no method %s.%s(%s), which is needed to "
+                    + "read signing identities and provisioning profiles. This version of the compiler "
+                    + "isn't supported.", Version.getVersion(), clazz.getName(), name,
+                    paramType.getSimpleName()), e);
+        }
+    }
+
+    private static Object invoke(Method method, Object arg) throws Exception {
+        try {
+            return method.invoke(null, arg);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Returns the keychains in the user's keychain search list. The system
+     * keychain is always included.
+     */
+    static List<File> getKeychainSearchList() {
+        String output = "";
+        try {
+            Process process = new ProcessBuilder("security", "list-keychains").redirectErrorStream(true).start();
+            InputStream in = process.getInputStream();
+            try {
+                output = IOUtils.toString(in, "UTF-8");
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            if (process.waitFor() != 0) {
+                output = "";
+            }
+        } catch (IOException e) {
+            // Not on a Mac
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return parseKeychainSearchList(output);
+    }
+
+    /**
+     * Parses the output of {@code security list-keychains}, one quoted path
+     * per line.
+     */
+    static List<File> parseKeychainSearchList(String output) {
+        List<File> keychains = new ArrayList<>();
+        for (String line : output.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.length() > 1 && line.startsWith("\"") && line.endsWith("\"")) {
+                keychains.add(new File(line.substring(1, line.length() - 1)));
+            }
+        }
+        if (!keychains.contains(SYSTEM_KEYCHAIN)) {
+            keychains.add(SYSTEM_KEYCHAIN);
+        }
+        return keychains;
+    }
+
+    /**
+     * Hashes the names, sizes and modification times of the files in
+     * {@code dir}. The contents aren't read, keychains can be large.
+     */
+    static String fingerprint(File dir) {
+        return fingerprint(dir, Collections.<File>emptyList());
+    }
+
+    /**
+     * Same as {@link #fingerprint(File)} but also hashes the paths, sizes
+     * and modification times of {@code files}, which may be anywhere.
+     */
+    static String fingerprint(File dir, List<File> files) {
+        BuildFingerprint fingerprint = new BuildFingerprint();
+        for (File f : files) {
+            fingerprint.add(f.getAbsolutePath(), f.isFile() ? f.length() + ":" + f.lastModified() : "missing");
+        }
+        fingerprint.add("dir", dir.getAbsolutePath());
+        File[] dirFiles = dir.listFiles();
+        if (dirFiles == null) {
+            return fingerprint.add("missing", true).getHash();
+        }
+        Arrays.sort(dirFiles);
+        fingerprint.add("lastModified", dir.lastModified());
+        for (File f : dirFiles) {
+            if (f.isFile()) {
+                fingerprint.add(f.getName(), f.length() + ":" + f.lastModified());
+            }
+        }
+        return fingerprint.getHash();
+    }
+
+    /**
+     * Waits for the result of a lookup. Exceptions thrown by the lookup are
+     * rethrown as is if unchecked.
+     */
+    public static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while looking up signing identities and profiles", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof ExecutionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.common;
+
+import static com.bugvm.maven.common.MemoryBudget.MB;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MemoryBudget}.
+ */
+public class MemoryBudgetTest {
+
+    @Test
+    public void testDefaultsToMaxHeap() {
+        MemoryBudget budget = new MemoryBudget(0, 1024 * MB);
+        assertEquals(1024 * MB, budget.getInProcess());
+        assertFalse(budget.isCapped());
+        assertEquals(512 * MB, budget.getForkedHeap(2));
+    }
+
+    @Test
+    public void testInProcessIsCappedAtMaxHeap() {
+        MemoryBudget budget = new MemoryBudget(4096, 1024 * MB);
+        assertEquals(1024 * MB, budget.getInProcess());
+        assertTrue(budget.isCapped());
+        // Forked compilers have heaps of their own
+        assertEquals(2048 * MB, budget.getForkedHeap(2));
+    }
+
+    @Test
+    public void testSmallerBudgetIsKept() {
+        MemoryBudget budget = new MemoryBudget(512, 1024 * MB);
+        assertEquals(512 * MB, budget.getInProcess());
+        assertFalse(budget.isCapped());
+    }
+
+    @Test
+    public void testForkedHeapIsEnoughForOneThread() {
+        assertEquals(MemoryBudget.MEMORY_PER_THREAD, new MemoryBudget(512, 1024 * MB).getForkedHeap(4));
+    }
+
+    @Test
+    public void testAffordableThreads() {
+        assertEquals(4, MemoryBudget.getAffordableThreads(1024 * MB));
+        assertEquals(1, MemoryBudget.getAffordableThreads(100 * MB));
+    }
+}
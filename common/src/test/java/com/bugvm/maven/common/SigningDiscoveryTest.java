@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.common;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.bugvm.compiler.target.ios.ProvisioningProfile;
+import com.dd.plist.NSArray;
+import com.dd.plist.NSDate;
+import com.dd.plist.NSDictionary;
+import com.dd.plist.NSString;
+
+/**
+ * Tests {@link SigningDiscovery} against fixture directories.
+ */
+public class SigningDiscoveryTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File profilesDir;
+    private File keychainsDir;
+
+    @Before
+    public void setUp() throws Exception {
+        profilesDir = tmp.newFolder("profiles");
+        keychainsDir = tmp.newFolder("keychains");
+    }
+
+    @Test
+    public void testListsProfilesInConfiguredDir() throws Exception {
+        createProfile("a.mobileprovision", "Profile A", 30);
+        createProfile("b.mobileprovision", "Profile B", 30);
+        createProfile("expired.mobileprovision", "Expired", -1);
+        FileUtils.writeStringToFile(new File(profilesDir, "notes.txt"), "not a profile", "UTF-8");
+
+        List<ProvisioningProfile> profiles = SigningDiscovery.get(
+                new SigningDiscovery(profilesDir, keychainsDir).provisioningProfiles());
+
+        assertEquals(names("Profile A", "Profile B"), names(profiles));
+        for (ProvisioningProfile profile : profiles) {
+            assertEquals(profilesDir, profile.getFile().getParentFile());
+        }
+    }
+
+    @Test
+    public void testMissingProfilesDir() throws Exception {
+        File missing = new File(tmp.getRoot(), "missing");
+        List<ProvisioningProfile> profiles = SigningDiscovery.get(
+                new SigningDiscovery(missing, keychainsDir).provisioningProfiles());
+        assertTrue(profiles.isEmpty());
+    }
+
+    @Test
+    public void testRelistsWhenProfileIsAdded() throws Exception {
+        createProfile("a.mobileprovision", "Profile A", 30);
+        SigningDiscovery discovery = new SigningDiscovery(profilesDir, keychainsDir);
+        assertEquals(names("Profile A"), names(SigningDiscovery.get(discovery.provisioningProfiles())));
+
+        createProfile("b.mobileprovision", "Profile B", 30);
+        assertEquals(names("Profile A", "Profile B"),
+                names(SigningDiscovery.get(discovery.provisioningProfiles())));
+    }
+
+    @Test
+    public void testReusesUnchangedProfiles() throws Exception {
+        createProfile("a.mobileprovision", "Profile A", 30);
+        SigningDiscovery discovery = new SigningDiscovery(profilesDir, keychainsDir);
+        List<ProvisioningProfile> first = SigningDiscovery.get(discovery.provisioningProfiles());
+        List<ProvisioningProfile> second = SigningDiscovery.get(discovery.provisioningProfiles());
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testNoKeychainsInConfiguredDir() throws Exception {
+        FileUtils.writeStringToFile(new File(keychainsDir, "notes.txt"), "not a keychain", "UTF-8");
+        assertTrue(SigningDiscovery.get(
+                new SigningDiscovery(profilesDir, keychainsDir).signingIdentities()).isEmpty());
+    }
+
+    @Test
+    public void testFingerprintUsesNameSizeAndModificationTime() throws Exception {
+        File keychain = new File(keychainsDir, "login.keychain");
+        FileUtils.writeStringToFile(keychain, "abcd", "UTF-8");
+        keychain.setLastModified(1000000000000L);
+        keychainsDir.setLastModified(1000000000000L);
+        String fingerprint = SigningDiscovery.fingerprint(keychainsDir);
+
+        // Same name, size and modification time
+        FileUtils.writeStringToFile(keychain, "efgh", "UTF-8");
+        keychain.setLastModified(1000000000000L);
+        assertEquals(fingerprint, SigningDiscovery.fingerprint(keychainsDir));
+
+        keychain.setLastModified(1000000001000L);
+        assertFalse(fingerprint.equals(SigningDiscovery.fingerprint(keychainsDir)));
+    }
+
+    @Test
+    public void testFingerprintUsesKeychainsOutsideDir() throws Exception {
+        File system = tmp.newFile("System.keychain");
+        system.setLastModified(1000000000000L);
+        List<File> searchList = Arrays.asList(system);
+        String fingerprint = SigningDiscovery.fingerprint(keychainsDir, searchList);
+        assertEquals(fingerprint, SigningDiscovery.fingerprint(keychainsDir, searchList));
+
+        system.setLastModified(1000000001000L);
+        assertFalse(fingerprint.equals(SigningDiscovery.fingerprint(keychainsDir, searchList)));
+    }
+
+    @Test
+    public void testKeychainSearchListIncludesSystemKeychain() throws Exception {
+        List<File> keychains = SigningDiscovery.parseKeychainSearchList(
+                "    \"/Users/john/Library/Keychains/login.keychain-db\"\n");
+        assertEquals(Arrays.asList(new File("/Users/john/Library/Keychains/login.keychain-db"),
+                SigningDiscovery.SYSTEM_KEYCHAIN), keychains);
+
+        keychains = SigningDiscovery.parseKeychainSearchList(
+                "    \"/Users/john/Library/Keychains/login.keychain-db\"\n"
+                + "    \"/Library/Keychains/System.keychain\"\n");
+        assertEquals(Arrays.asList(new File("/Users/john/Library/Keychains/login.keychain-db"),
+                SigningDiscovery.SYSTEM_KEYCHAIN), keychains);
+    }
+
+    private void createProfile(String fileName, String name, int expiresInDays) throws Exception {
+        long now = System.currentTimeMillis();
+        NSDictionary entitlements = new NSDictionary();
+        entitlements.put("application-identifier", "ABCDE12345.com.example.*");
+        entitlements.put("get-task-allow", true);
+        NSDictionary dict = new NSDictionary();
+        dict.put("UUID", "uuid-" + fileName);
+        dict.put("Name", name);
+        dict.put("AppIDName", "Example");
+        dict.put("ApplicationIdentifierPrefix", new NSArray(new NSString("ABCDE12345")));
+        dict.put("CreationDate", new NSDate(new Date(now - DAY)));
+        dict.put("ExpirationDate", new NSDate(new Date(now + expiresInDays * DAY)));
+        dict.put("Entitlements", entitlements);
+        dict.put("DeveloperCertificates", new NSArray(0));
+        byte[] plist = dict.toXMLPropertyList().getBytes("UTF-8");
+        // Profiles are CMS signed plists. The signature isn't verified so
+        // the fixtures aren't signed.
+        byte[] cms = new CMSSignedDataGenerator().generate(new CMSProcessableByteArray(plist), true).getEncoded();
+        FileUtils.writeByteArrayToFile(new File(profilesDir, fileName), cms);
+    }
+
+    private static Set<String> names(String... names) {
+        Set<String> result = new TreeSet<>();
+        for (String name : names) {
+            result.add(name);
+        }
+        return result;
+    }
+
+    private static Set<String> names(List<ProvisioningProfile> profiles) {
+        Set<String> result = new TreeSet<>();
+        for (ProvisioningProfile profile : profiles) {
+            result.add(profile.getName());
+        }
+        return result;
+    }
+}
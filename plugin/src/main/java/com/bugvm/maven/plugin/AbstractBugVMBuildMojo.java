@@ -15,9 +15,13 @@
  */
 package com.bugvm.maven.plugin;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -37,6 +41,23 @@ public abstract class AbstractBugVMBuildMojo extends AbstractBugVMMojo {
     @Parameter(property="bugvm.archs")
     protected String archs;
 
+    /**
+     * If set to {@code true} and more than one architecture is being built,
+     * the classes for each architecture are compiled concurrently, each by a
+     * compiler in a separate JVM. The final build then links and merges the
+     * per-arch results using the objects already in the cache.
+     */
+    @Parameter(property="bugvm.parallelArchs")
+    protected boolean parallelArchs = false;
+
+    /**
+     * The maximum number of architectures to compile concurrently when
+     * {@code parallelArchs} is enabled. Defaults to the number of available
+     * processors.
+     */
+    @Parameter(property="bugvm.archParallelism")
+    protected int archParallelism = -1;
+
     // /**
     //  * If set to {@code true} bitcode will be generated in the linked binary.
     //  * The default is {@code false}.
@@ -51,15 +72,15 @@ public abstract class AbstractBugVMBuildMojo extends AbstractBugVMMojo {
     protected abstract boolean shouldArchive();
 
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
 
         try {
 
             Config.Builder builder = configure(new Config.Builder())
                     .skipInstall(false);
 
+            List<Arch> archs = new ArrayList<>();
             if (getArchs() != null) {
-                List<Arch> archs = new ArrayList<>();
                 for (String s : getArchs().trim().split(":")) {
                     archs.add(Arch.valueOf(s));
                 }
@@ -67,13 +88,42 @@ public abstract class AbstractBugVMBuildMojo extends AbstractBugVMMojo {
             }
             // builder.enableBitcode(enableBitcode);
 
-            AppCompiler compiler = new AppCompiler(builder.build());
-            compiler.build();
+            boolean compiled = parallelArchs && archs.size() > 1;
+            if (compiled) {
+                compileArchs(archs);
+            }
+
+            long start = System.currentTimeMillis();
+            CompilePhase compilePhase = new CompilePhase();
+            builder.logger(compilePhase.logger(getBugVMLogger()));
+            Config config = builder.build();
+            AppCompiler compiler = new AppCompiler(config);
+            beginCompilePhase(compilePhase, config);
+            try {
+                if (!compiled) {
+                    pullFromSharedCache(config);
+                }
+                BuildMetrics.Phase phase = getMetrics().start("build");
+                compiler.build();
+                phase.stop();
+            } finally {
+                compilePhase.end();
+            }
+            pushToSharedCache();
+            updateCacheIndex(config);
+            BuildMetrics.Phase phase;
+            if (compiled) {
+                getLog().info("Linked " + archs + " in " + formatMillis(
+                        System.currentTimeMillis() - start));
+            }
             if (shouldArchive()) {
+                phase = getMetrics().start("archive");
                 compiler.archive();
             } else {
+                phase = getMetrics().start("install");
                 compiler.install();
             }
+            phase.stop();
 
         } catch (IOException e) {
             if (shouldArchive()) {
@@ -83,4 +133,41 @@ public abstract class AbstractBugVMBuildMojo extends AbstractBugVMMojo {
             }
         }
     }
+
+    /**
+     * Compiles the classes for each of the specified archs in separate JVMs,
+     * see {@link #compileForked}. Each arch gets its own config and tmp dir.
+     * Linking is skipped, the compiled objects end up in the cache from which
+     * the final multi-arch build picks them up.
+     */
+    protected void compileArchs(List<Arch> archs) throws MojoExecutionException {
+
+        int parallelism = archParallelism > 0 ? archParallelism : Runtime.getRuntime().availableProcessors();
+        parallelism = Math.max(1, Math.min(parallelism, archs.size()));
+
+        // configure() wipes the tmp dir so all configs have to be created
+        // before any of the compilers start writing to it
+        Map<String, Config> configs = new LinkedHashMap<>();
+        try {
+            for (Arch arch : archs) {
+                Config.Builder builder = configure(new Config.Builder());
+                // Share the compiler threads between the concurrent compilers
+                builder.archs(Collections.singletonList(arch))
+                        .tmpDir(new File(getTmpDir(), "arch-" + arch))
+                        .threads(getForkedCompilerThreads(parallelism))
+                        .skipLinking(true)
+                        .skipInstall(true);
+                configs.put(arch.toString(), builder.build());
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failed to configure per-arch BugVM builds", e);
+        }
+
+        compileForked(configs, parallelism);
+    }
+
+    private static String formatMillis(long millis) {
+        return String.format("%.1fs", millis / 1000.0);
+    }
 }
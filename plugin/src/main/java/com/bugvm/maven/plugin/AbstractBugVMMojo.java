@@ -16,11 +16,34 @@
 package com.bugvm.maven.plugin;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.artifact.Artifact;
@@ -30,8 +53,10 @@ import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
 import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
@@ -46,6 +71,7 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.codehaus.plexus.util.xml.Xpp3DomWriter;
 import com.bugvm.compiler.AppCompiler;
 import com.bugvm.compiler.Version;
+import com.bugvm.compiler.clazz.Path;
 import com.bugvm.compiler.config.Arch;
 import com.bugvm.compiler.config.Config;
 import com.bugvm.compiler.config.Config.Home;
@@ -53,11 +79,20 @@ import com.bugvm.compiler.config.OS;
 import com.bugvm.compiler.log.Logger;
 import com.bugvm.compiler.target.ios.ProvisioningProfile;
 import com.bugvm.compiler.target.ios.SigningIdentity;
+import com.bugvm.maven.common.BuildFingerprint;
+import com.bugvm.maven.common.MemoryBudget;
+import com.bugvm.maven.common.SigningDiscovery;
 
 /**
  */
 public abstract class AbstractBugVMMojo extends AbstractMojo {
 
+    protected static final long MB = 1024 * 1024;
+    private static final long CACHE_MIN_IDLE = 60 * 60 * 1000L;
+
+    private static final String UNPACKED_MARKER = ".bugvm-unpacked";
+    private static final String TMP_DIR_SIZE = ".bugvm-size";
+
     @Component
     protected MavenProject project;
 
@@ -70,6 +105,12 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
     @Parameter(defaultValue="${localRepository}")
     private ArtifactRepository localRepository;
 
+    @Parameter(defaultValue="${session}", readonly=true)
+    private MavenSession session;
+
+    @Parameter(defaultValue="${mojoExecution}", readonly=true)
+    private MojoExecution mojoExecution;
+
     /**
      * Base directory to extract BugVM native distribution files into. The
      * bugvm-dist bundle will be downloaded from Maven and extracted into this
@@ -179,11 +220,207 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
     @Parameter(property="bugvm.debugPort")
     protected int debugPort = -1;
 
+    /**
+     * If set to {@code true} the compile and link steps are skipped entirely
+     * when none of the build inputs have changed since the last build. The
+     * inputs are the runtime classpath, the properties and config files, the
+     * embedded {@code <config>}, the os and arch and the plugin settings.
+     * Files referenced from the config (e.g. resources) are not tracked.
+     *
+     * In incremental mode the tmp dir isn't wiped before each build. Instead
+     * every distinct configuration gets its own sub-directory which is kept
+     * around between builds so its intermediate files can be reused.
+     */
+    @Parameter(property="bugvm.incremental")
+    protected boolean incremental = false;
+
+    /**
+     * The maximum total size in megabytes of the per-configuration tmp
+     * directories kept in incremental mode. The least recently used
+     * directories are deleted when the limit is exceeded. The directory of
+     * the current build is always kept.
+     */
+    @Parameter(property="bugvm.tmpDirMaxSize")
+    protected long tmpDirMaxSize = 2048;
+
+    /**
+     * Location of a compiler cache shared between machines, e.g. CI agents,
+     * in addition to the local cache in {@code cacheDir}. Either a directory,
+     * e.g. on a network file system, or an http(s) URL of a server supporting
+     * {@code GET} and {@code PUT}. Objects compiled from jar files on the
+     * classpath which are missing from the local cache are fetched from it
+     * before building. The compiler recompiles objects whose dependencies are
+     * found at other paths than when they were built, so machines with their
+     * local repository ({@code ~/.m2}) at different paths only partly reuse
+     * each other's objects.
+     */
+    @Parameter(property="bugvm.sharedCache")
+    protected String sharedCache;
+
+    /**
+     * Either {@code read-only} or {@code read-write}. In {@code read-write}
+     * mode the objects compiled from jar files which weren't found in the
+     * shared cache are uploaded to it after the build.
+     */
+    @Parameter(property="bugvm.sharedCacheMode")
+    protected String sharedCacheMode = SharedCache.MODE_READ_ONLY;
+
+    /**
+     * The maximum size in megabytes of the compiler cache in
+     * {@code cacheDir}. When exceeded after a build the least recently used
+     * entries are deleted. Entries used within the last hour are always
+     * kept. 0 means no limit.
+     */
+    @Parameter(property="bugvm.cacheMaxSize")
+    protected long cacheMaxSize = 0;
+
+    /**
+     * The number of days after which unused entries are deleted from the
+     * compiler cache. 0 means entries never expire.
+     */
+    @Parameter(property="bugvm.cacheMaxAge")
+    protected int cacheMaxAge = 0;
+
+    /**
+     * The number of threads the compiler uses to compile classes. 0 (the
+     * default) picks the number of available processors, reduced if
+     * {@code memoryBudget} can't accommodate that many threads.
+     */
+    @Parameter(property="bugvm.threads")
+    protected int threads = 0;
+
+    /**
+     * The amount of memory in megabytes the compiler may use. Used to limit
+     * the number of compiler threads, each of which is assumed to need about
+     * 256 MB. 0 (the default) uses the maximum heap size of the Maven JVM.
+     * A compiler running in the Maven JVM is limited to its maximum heap
+     * size. Compilers forked to build several archs at the same time share
+     * the whole budget.
+     */
+    @Parameter(property="bugvm.memoryBudget")
+    protected long memoryBudget = 0;
+
     private Logger roboVMLogger;
 
+    private boolean upToDate;
+
+    private String tmpDirKey;
+
+    private SessionCache sessionCache;
+
+    private BuildMetrics metrics;
+
+    private SharedCache sharedCacheClient;
+
+    private int compilerThreads;
+
+    // Cache units which builds of this execution may have written to
+    private final Set<String> writtenCacheUnits = new HashSet<>();
+
+    @Override
+    public final void execute() throws MojoExecutionException, MojoFailureException {
+        metrics = new BuildMetrics();
+        metrics.set("goal", mojoExecution != null ? mojoExecution.getGoal() : getClass().getSimpleName());
+        metrics.set("project", project.getId());
+        metrics.set("bugvmVersion", getBugVMVersion());
+        try {
+            doExecute();
+        } finally {
+            if (sharedCacheClient != null) {
+                sharedCacheClient.logStats();
+                metrics.set("sharedCacheHits", sharedCacheClient.getHits());
+                metrics.set("sharedCacheMisses", sharedCacheClient.getMisses());
+                metrics.set("sharedCacheUploads", sharedCacheClient.getUploads());
+            }
+            metrics.finish();
+            File metricsFile = new File(project.getBuild().getDirectory(), "bugvm-build-metrics.json");
+            try {
+                metrics.writeJson(metricsFile);
+            } catch (IOException e) {
+                getLog().warn("Failed to write BugVM build metrics to " + metricsFile, e);
+            }
+            metrics.log(getLog());
+        }
+    }
+
+    /**
+     * Executes the goal. Build phases are timed by {@link #getMetrics()} and
+     * reported once this returns.
+     */
+    protected abstract void doExecute() throws MojoExecutionException, MojoFailureException;
+
+    protected BuildMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new BuildMetrics();
+        }
+        return metrics;
+    }
+
     protected Config.Builder configure(Config.Builder builder) throws MojoExecutionException {
+        BuildMetrics.Phase phase = getMetrics().start("configure");
+        try {
+            return configureBuilder(builder);
+        } finally {
+            phase.stop();
+        }
+    }
+
+    /**
+     * Configures {@code builder}. The independent, mostly I/O bound steps run
+     * concurrently: resolving and unpacking the dist, preparing the tmp dir,
+     * collecting the runtime classpath and looking up signing identities run
+     * in the background while the config files are parsed on this thread.
+     * {@link Config.Builder} isn't thread-safe so the results are applied to
+     * it on this thread, in the same order as before, once they are all
+     * available.
+     */
+    private Config.Builder configureBuilder(Config.Builder builder) throws MojoExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            return configureBuilder(builder, executor);
+        } finally {
+            // Let running tasks finish, e.g. an unpack, if we fail early
+            executor.shutdown();
+        }
+    }
+
+    private Config.Builder configureBuilder(Config.Builder builder, ExecutorService executor)
+            throws MojoExecutionException {
+
+        final File tmpDir = getTmpDir();
+        Future<Home> homeFuture = executor.submit(new Callable<Home>() {
+            public Home call() throws MojoExecutionException {
+                return resolveHome();
+            }
+        });
+        Future<Void> tmpDirFuture = executor.submit(new Callable<Void>() {
+            public Void call() throws MojoExecutionException {
+                prepareTmpDir(tmpDir);
+                return null;
+            }
+        });
+        Future<List<File>> classpathFuture = executor.submit(new Callable<List<File>>() {
+            public List<File> call() throws MojoExecutionException {
+                return getRuntimeClasspath();
+            }
+        });
+
         builder.logger(getBugVMLogger());
 
+        // Start looking up signing identities and profiles early, they are
+        // needed further down
+        SigningDiscovery signingDiscovery = new SigningDiscovery();
+        Future<List<SigningIdentity>> signingIdentities = null;
+        Future<List<ProvisioningProfile>> provisioningProfiles = null;
+        if (!skipSigning) {
+            if (signIdentity != null) {
+                signingIdentities = signingDiscovery.signingIdentities();
+            }
+            if (provisioningProfile != null) {
+                provisioningProfiles = signingDiscovery.provisioningProfiles();
+            }
+        }
+
         // load config base file if it exists (and properties)
 
         if (os != null) {
@@ -242,45 +479,20 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
         }
 
         // Read embedded BugVM <config> if there is one
-        Plugin plugin = project.getPlugin("com.bugvm:bugvm-maven-plugin");
-        MavenProject p = project;
-        while (p != null && plugin == null) {
-            plugin = p.getPluginManagement().getPluginsAsMap().get("com.bugvm:bugvm-maven-plugin");
-            if (plugin == null) p = p.getParent();
-        }
-        if (plugin != null) {
-            getLog().debug("Reading BugVM plugin configuration from " + p.getFile().getAbsolutePath());
-            Xpp3Dom configDom = (Xpp3Dom) plugin.getConfiguration();
-            if (configDom != null && configDom.getChild("config") != null) {
-                StringWriter sw = new StringWriter();
-                XMLWriter xmlWriter = new PrettyPrintXMLWriter(sw, "UTF-8", null);
-                Xpp3DomWriter.write(xmlWriter, configDom.getChild("config"));
-                try {
-                    builder.read(new StringReader(sw.toString()),
-                            project.getBasedir());
-                } catch (Exception e) {
-                    throw new MojoExecutionException(
-                            "Failed to read BugVM config embedded in POM", e);
-                }
+        Xpp3Dom embeddedConfig = getEmbeddedConfig();
+        if (embeddedConfig != null) {
+            String xml = getEmbeddedConfigXml(embeddedConfig);
+            try {
+                builder.read(new StringReader(xml),
+                        project.getBasedir());
+            } catch (Exception e) {
+                throw new MojoExecutionException(
+                        "Failed to read BugVM config embedded in POM", e);
             }
         }
 
-        File tmpDir = new File(project.getBuild().getDirectory(), "bugvm.tmp");
-        try {
-            FileUtils.deleteDirectory(tmpDir);
-        } catch (IOException e) {
-            throw new MojoExecutionException(
-                    "Failed to clean output dir " + tmpDir, e);
-        }
-        tmpDir.mkdirs();
-
-        Home home = null;
-        try {
-            home = Home.find();
-        } catch (Throwable t) {}
-        if (home == null || !home.isDev()) {
-            home = new Config.Home(unpackBugVMDist());
-        }
+        await(tmpDirFuture);
+        Home home = await(homeFuture);
         builder.home(home)
                 .tmpDir(tmpDir)
                 .skipInstall(true)
@@ -307,7 +519,7 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
                 getLog().debug(
                         "Using explicit signing identity: " + signIdentity);
                 builder.iosSignIdentity(SigningIdentity.find(
-                        SigningIdentity.list(), signIdentity));
+                        SigningDiscovery.get(signingIdentities), signIdentity));
             }
 
             if (provisioningProfile != null) {
@@ -315,7 +527,7 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
                         "Using explicit provisioning profile: "
                                 + provisioningProfile);
                 builder.iosProvisioningProfile(ProvisioningProfile.find(
-                        ProvisioningProfile.list(), provisioningProfile));
+                        SigningDiscovery.get(provisioningProfiles), provisioningProfile));
             }
 
             // if (keychainPassword != null) {
@@ -329,10 +541,37 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
             builder.cacheDir(cacheDir);
         }
 
+        builder.threads(getCompilerThreads());
+
         builder.clearClasspathEntries();
 
         // configure the runtime classpath
+        for (File f : await(classpathFuture)) {
+            builder.addClasspathEntry(f);
+        }
+
+        return builder;
+    }
+
+    private void prepareTmpDir(File tmpDir) throws MojoExecutionException {
+        try {
+            if (tmpDirKey != null) {
+                getLog().debug("Reusing output dir " + tmpDir);
+                tmpDir.mkdirs();
+                tmpDir.setLastModified(System.currentTimeMillis());
+                evictTmpDirs(tmpDir);
+            } else {
+                FileUtils.deleteDirectory(tmpDir);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failed to clean output dir " + tmpDir, e);
+        }
+        tmpDir.mkdirs();
+    }
 
+    private List<File> getRuntimeClasspath() throws MojoExecutionException {
+        List<File> classpath = new ArrayList<>();
         try {
             for (Object object : project.getRuntimeClasspathElements()) {
                 String path = (String) object;
@@ -341,14 +580,30 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
                             "Including classpath element for BugVM app: "
                                     + path);
                 }
-                builder.addClasspathEntry(new File(path));
+                classpath.add(new File(path));
             }
         } catch (DependencyResolutionRequiredException e) {
             throw new MojoExecutionException(
                     "Error resolving application classpath for BugVM build", e);
         }
+        return classpath;
+    }
 
-        return builder;
+    /**
+     * Waits for a configuration task and rethrows its failure.
+     */
+    private static <T> T await(Future<T> future) throws MojoExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while configuring BugVM build", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        }
     }
 
     protected AppCompiler build(OS os, Arch arch, String targetType)
@@ -363,16 +618,54 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
             throw new MojoExecutionException(e.getMessage(), e);
         }
 
+        BuildFingerprint fingerprint = null;
+        File fingerprintFile = new File(installDir, ".bugvm-fingerprint");
+        if (incremental) {
+            BuildMetrics.Phase phase = getMetrics().start("fingerprint");
+            tmpDirKey = computeFingerprint(os, arch, targetType, false).getHash().substring(0, 12);
+            fingerprint = computeFingerprint(os, arch, targetType, true);
+            upToDate = fingerprint.matches(fingerprintFile);
+            phase.stop();
+        }
+
         configure(builder).os(os).arch(arch).targetType(targetType);
+        CompilePhase compilePhase = new CompilePhase();
+        builder.logger(compilePhase.logger(getBugVMLogger()));
 
         // execute the BugVM build
 
         try {
 
+            Config config = builder.build();
+            AppCompiler compiler = new AppCompiler(config);
+            if (upToDate && new File(config.getTmpDir(), config.getExecutableName()).exists()) {
+                getLog().info("BugVM app is up to date, skipping compile and link");
+                return compiler;
+            }
+
             getLog().info(
                     "Compiling BugVM app, this could take a while, especially the first time round");
-            AppCompiler compiler = new AppCompiler(builder.build());
-            compiler.build();
+            fingerprintFile.delete();
+            beginCompilePhase(compilePhase, config);
+            try {
+                pullFromSharedCache(config);
+                BuildMetrics.Phase phase = getMetrics().start("build");
+                try {
+                    compiler.build();
+                } finally {
+                    phase.stop();
+                }
+            } finally {
+                compilePhase.end();
+            }
+            pushToSharedCache();
+            updateCacheIndex(config);
+            if (fingerprint != null) {
+                fingerprint.write(fingerprintFile);
+            }
+            if (tmpDirKey != null) {
+                recordTmpDirSize(config.getTmpDir());
+            }
 
             return compiler;
 
@@ -382,6 +675,513 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Compiles the classes of each of {@code configs}, keyed by the label
+     * used in log messages, into the cache without linking. Up to
+     * {@code parallelism} configs are compiled at the same time, each in its
+     * own JVM (see {@link ForkedCompiler}) with an equal share of
+     * {@code memoryBudget}. A build in this JVM then finds the objects in the
+     * cache.
+     */
+    protected void compileForked(Map<String, Config> configs, int parallelism)
+            throws MojoExecutionException {
+
+        try {
+            for (Config config : configs.values()) {
+                pullFromSharedCache(config);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failed to read from the shared BugVM cache", e);
+        }
+
+        final long maxHeap = new MemoryBudget(memoryBudget).getForkedHeap(parallelism);
+        getLog().info("Compiling " + configs.keySet() + " using " + parallelism
+                + " forked compilers, this could take a while");
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Map<String, Future<Long>> results = new LinkedHashMap<>();
+            for (Map.Entry<String, Config> entry : configs.entrySet()) {
+                final String label = entry.getKey();
+                final Config config = entry.getValue();
+                results.put(label, executor.submit(new Callable<Long>() {
+                    public Long call() throws IOException, InterruptedException, MojoExecutionException {
+                        BuildCoordinator.Claim claim = claimCacheUnits(config, config.getThreads());
+                        long start = System.currentTimeMillis();
+                        BuildMetrics.Phase phase = getMetrics().start("build " + label);
+                        try {
+                            new ForkedCompiler(label, config, getLog()).maxHeap(maxHeap).compile();
+                        } finally {
+                            phase.stop();
+                            claim.release();
+                        }
+                        return System.currentTimeMillis() - start;
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Long>> entry : results.entrySet()) {
+                try {
+                    getLog().info("Compiled " + entry.getKey() + " in "
+                            + String.format("%.1fs", entry.getValue().get() / 1000.0));
+                } catch (ExecutionException e) {
+                    throw new MojoExecutionException("Failed to compile BugVM app for "
+                            + entry.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while compiling BugVM app", e);
+                }
+            }
+        } finally {
+            // Interrupts the waiting workers which kill their JVMs
+            executor.shutdownNow();
+        }
+        pushToSharedCache();
+    }
+
+    /**
+     * Returns the shared cache configured by {@code sharedCache} or
+     * {@code null} if none has been configured.
+     */
+    protected synchronized SharedCache getSharedCache() throws MojoExecutionException {
+        if (sharedCache == null || sharedCache.trim().isEmpty()) {
+            return null;
+        }
+        if (sharedCacheClient == null) {
+            try {
+                sharedCacheClient = SharedCache.create(sharedCache.trim(), sharedCacheMode, getLog());
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
+        return sharedCacheClient;
+    }
+
+    /**
+     * Fetches the objects missing from the local cache for {@code config}
+     * from the shared cache, if there is one.
+     */
+    protected void pullFromSharedCache(Config config) throws MojoExecutionException, IOException {
+        SharedCache cache = getSharedCache();
+        if (cache != null) {
+            BuildMetrics.Phase phase = getMetrics().start("shared cache pull");
+            try {
+                cache.pull(config);
+            } finally {
+                phase.stop();
+            }
+        }
+    }
+
+    /**
+     * Uploads the objects which were missing from the shared cache, if there
+     * is one and it's writable.
+     */
+    protected void pushToSharedCache() throws MojoExecutionException {
+        SharedCache cache = getSharedCache();
+        if (cache != null && cache.isReadWrite()) {
+            BuildMetrics.Phase phase = getMetrics().start("shared cache push");
+            try {
+                cache.push();
+            } finally {
+                phase.stop();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of compiler threads to use in this JVM as
+     * determined by {@code threads} and {@code memoryBudget}, which is
+     * capped at the maximum heap size of the JVM.
+     */
+    protected synchronized int getCompilerThreads() {
+        if (compilerThreads == 0) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            MemoryBudget memory = new MemoryBudget(memoryBudget);
+            if (memory.isCapped()) {
+                getLog().debug("The memory budget of " + memoryBudget + " MB exceeds the maximum heap size");
+            }
+            long budget = memory.getInProcess();
+            int affordable = MemoryBudget.getAffordableThreads(budget);
+            int n = threads > 0 ? threads : cores;
+            if (n > affordable) {
+                if (threads > 0) {
+                    getLog().warn("Reducing compiler threads from " + threads + " to " + affordable
+                            + " to stay within the memory budget of " + budget / MB + " MB");
+                }
+                n = affordable;
+            }
+            compilerThreads = n;
+            getLog().info("Using " + n + " compiler threads (" + (threads > 0 ? "configured" : "auto")
+                    + ", " + cores + " cores) and a memory budget of " + budget / MB + " MB");
+            getMetrics().set("compilerThreads", n);
+            getMetrics().set("memoryBudgetMB", budget / MB);
+        }
+        return compilerThreads;
+    }
+
+    /**
+     * Returns the number of threads of each of {@code forks} compilers
+     * running at the same time in JVMs of their own: an equal share of
+     * {@code threads} or the available processors, reduced to what the heap
+     * of each fork accommodates.
+     */
+    protected int getForkedCompilerThreads(int forks) {
+        int total = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        long heap = new MemoryBudget(memoryBudget).getForkedHeap(forks);
+        return Math.max(1, Math.min(total / forks, MemoryBudget.getAffordableThreads(heap)));
+    }
+
+    protected File getCacheRoot() {
+        return cacheDir != null ? cacheDir : new File(System.getProperty("user.home"), ".bugvm/cache");
+    }
+
+    /**
+     * Marks the cache entries used by {@code config} as used now in the
+     * cache index and evicts entries if {@code cacheMaxSize} or
+     * {@code cacheMaxAge} are set. Only the entries which were pending when
+     * a build of this execution started compiling are measured again, see
+     * {@link #getPendingCacheUnits}. The whole cache is only scanned if
+     * there is no index yet.
+     */
+    protected void updateCacheIndex(Config config) {
+        if (cacheMaxSize <= 0 && cacheMaxAge <= 0) {
+            return;
+        }
+        BuildMetrics.Phase phase = getMetrics().start("cache index");
+        File root = getCacheRoot();
+        try {
+            LockFile lock = CacheIndex.lock(root);
+            try {
+                CacheIndex index = new CacheIndex(root);
+                if (!index.exists()) {
+                    getLog().info("Indexing BugVM cache " + root);
+                    index.scan();
+                }
+                Set<String> written;
+                synchronized (this) {
+                    written = new HashSet<>(writtenCacheUnits);
+                }
+                for (String key : getCacheUnits(config)) {
+                    if (written.contains(key)) {
+                        index.touch(key);
+                    } else {
+                        index.markUsed(key);
+                    }
+                }
+                evictFromCache(index);
+                index.save();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            getLog().warn("Failed to update BugVM cache index in " + root + ": " + e.getMessage());
+        } finally {
+            phase.stop();
+        }
+    }
+
+    /**
+     * Returns the keys, relative to the cache root, of the compiler cache
+     * entries of all classpath entries of {@code config}.
+     */
+    protected Set<String> getCacheUnits(Config config) {
+        Set<String> units = new TreeSet<>();
+        for (Arch arch : getBuildArchs(config)) {
+            units.addAll(getCacheUnits(config, arch, false));
+        }
+        return units;
+    }
+
+    /**
+     * Returns the keys of the compiler cache entries which a build of
+     * {@code config} may have to compile, per arch in the order the compiler
+     * builds the archs. These are the entries of directories of classes and
+     * of jars which haven't been compiled yet or have changed since.
+     */
+    protected List<Set<String>> getPendingCacheUnits(Config config) {
+        List<Set<String>> result = new ArrayList<>();
+        for (Arch arch : getBuildArchs(config)) {
+            result.add(getCacheUnits(config, arch, true));
+        }
+        return result;
+    }
+
+    private Set<String> getCacheUnits(Config config, Arch arch, boolean pendingOnly) {
+        File root = getCacheRoot();
+        Set<String> units = new TreeSet<>();
+        for (Path path : config.getClazzes().getPaths()) {
+            File dir = config.getCacheDir(path);
+            String key = CacheIndex.getKey(root, dir);
+            if (key != null) {
+                // Multi-arch builds use the same entries for each arch
+                String[] parts = key.split("/", 3);
+                if (parts.length == 3) {
+                    key = parts[0] + "/" + arch + "/" + parts[2];
+                    dir = new File(root, key);
+                }
+            } else {
+                key = dir.getAbsolutePath();
+            }
+            if (!pendingOnly || isPending(path.getFile(), dir)) {
+                units.add(key);
+            }
+        }
+        return units;
+    }
+
+    private static boolean isPending(File file, File cacheDir) {
+        if (!file.isFile()) {
+            // Directories of classes are checked class by class by the compiler
+            return true;
+        }
+        String[] names = cacheDir.list();
+        return names == null || names.length == 0 || file.lastModified() > cacheDir.lastModified();
+    }
+
+    /**
+     * Returns the archs the compiler builds for {@code config}, one after
+     * the other.
+     */
+    private static List<Arch> getBuildArchs(Config config) {
+        List<Arch> archs = config.getArchs();
+        if (archs == null || archs.isEmpty()) {
+            archs = config.getTarget().getDefaultArchs();
+        }
+        return archs.isEmpty() ? Collections.singletonList(config.getArch()) : archs;
+    }
+
+    BuildCoordinator getBuildCoordinator() throws MojoExecutionException {
+        return getSessionCache().get("buildCoordinator",
+                new SessionCache.Loader<BuildCoordinator>() {
+                    public BuildCoordinator load() {
+                        return new BuildCoordinator(Runtime.getRuntime().availableProcessors());
+                    }
+                });
+    }
+
+    /**
+     * Waits until no other build in this session is compiling any of the
+     * pending cache entries of {@code config} and {@code workers} compiler
+     * workers are free, see {@link BuildCoordinator}. Nothing is claimed if
+     * nothing is pending. The returned claim must be released once the
+     * classes have been compiled.
+     */
+    protected BuildCoordinator.Claim claimCacheUnits(Config config, int workers) throws MojoExecutionException {
+        Set<String> units = new TreeSet<>();
+        for (Set<String> s : getPendingCacheUnits(config)) {
+            units.addAll(s);
+        }
+        synchronized (this) {
+            writtenCacheUnits.addAll(units);
+        }
+        BuildCoordinator coordinator = getBuildCoordinator();
+        BuildMetrics.Phase phase = getMetrics().start("wait for other builds");
+        try {
+            return coordinator.claim(units, units.isEmpty() ? 0 : workers, getLog());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for other BugVM builds", e);
+        } finally {
+            phase.stop();
+        }
+    }
+
+    /**
+     * Starts the compile phase of a build of {@code config} in this JVM, see
+     * {@link CompilePhase}. The config's compiler threads are claimed as
+     * workers since the build is the only one compiling in this JVM.
+     * {@code phase} must have been created before the config so its logger
+     * could be set on it.
+     */
+    protected void beginCompilePhase(CompilePhase phase, Config config) throws MojoExecutionException {
+        List<Set<String>> units = getPendingCacheUnits(config);
+        boolean pending = false;
+        synchronized (this) {
+            for (Set<String> s : units) {
+                pending |= !s.isEmpty();
+                writtenCacheUnits.addAll(s);
+            }
+        }
+        BuildCoordinator coordinator = getBuildCoordinator();
+        BuildMetrics.Phase metricsPhase = getMetrics().start("wait for other builds");
+        try {
+            phase.begin(coordinator, units, pending ? config.getThreads() : 0, getLog());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for other BugVM builds", e);
+        } finally {
+            metricsPhase.stop();
+        }
+    }
+
+    protected void evictFromCache(CacheIndex index) throws IOException {
+        List<CacheIndex.Entry> evicted = index.evict(cacheMaxSize * MB,
+                cacheMaxAge * 24L * 60 * 60 * 1000, CACHE_MIN_IDLE);
+        if (!evicted.isEmpty()) {
+            long size = 0;
+            for (CacheIndex.Entry e : evicted) {
+                size += e.getSize();
+            }
+            getLog().info("Evicted " + evicted.size() + " entries (" + size / MB
+                    + " MB) from BugVM cache, " + index.getTotalSize() / MB + " MB left");
+        }
+    }
+
+    /**
+     * Computes the fingerprint of all inputs of a build for the specified
+     * os, arch and target type. If {@code includeClasspath} is {@code false}
+     * only the configuration is fingerprinted.
+     */
+    protected BuildFingerprint computeFingerprint(OS os, Arch arch, String targetType,
+            boolean includeClasspath) throws MojoExecutionException {
+
+        BuildFingerprint fingerprint = new BuildFingerprint()
+                .add("version", getBugVMVersion())
+                .add("os", os).add("arch", arch).add("targetType", targetType)
+                .add("home", home).add("installDir", installDir).add("cacheDir", cacheDir)
+                .add("debug", debug).add("debugPort", debugPort)
+                .add("skipSigning", skipSigning).add("signIdentity", signIdentity)
+                .add("provisioningProfile", provisioningProfile)
+                .add("useDebugLibs", Boolean.getBoolean("bugvm.useDebugLibs"))
+                .add("config", getEmbeddedConfig());
+        try {
+            File basedir = project.getBasedir();
+            fingerprint.addContents(propertiesFile != null ? propertiesFile
+                    : new File(basedir, "bugvm.properties"));
+            fingerprint.addContents(configFile != null ? configFile
+                    : new File(basedir, "bugvm.xml"));
+            if (includeClasspath) {
+                for (Object object : project.getRuntimeClasspathElements()) {
+                    fingerprint.addClasspathEntry(new File((String) object));
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to fingerprint BugVM build inputs", e);
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(
+                    "Error resolving application classpath for BugVM build", e);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the {@code <config>} element embedded in the configuration of
+     * this plugin in the POM or in the plugin management of one of its
+     * parents, or {@code null} if there is none.
+     */
+    protected Xpp3Dom getEmbeddedConfig() throws MojoExecutionException {
+        return getSessionCache().get("embeddedConfig:" + project.getId(), new SessionCache.Loader<Xpp3Dom>() {
+            public Xpp3Dom load() {
+                return findEmbeddedConfig();
+            }
+        });
+    }
+
+    private Xpp3Dom findEmbeddedConfig() {
+        Plugin plugin = project.getPlugin("com.bugvm:bugvm-maven-plugin");
+        MavenProject p = project;
+        while (p != null && plugin == null) {
+            plugin = p.getPluginManagement().getPluginsAsMap().get("com.bugvm:bugvm-maven-plugin");
+            if (plugin == null) p = p.getParent();
+        }
+        if (plugin != null) {
+            getLog().debug("Reading BugVM plugin configuration from " + p.getFile().getAbsolutePath());
+            Xpp3Dom configDom = (Xpp3Dom) plugin.getConfiguration();
+            if (configDom != null) {
+                return configDom.getChild("config");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the XML text of the embedded {@code <config>} of this project,
+     * which is serialized once per project rather than in every
+     * {@code configure()}. It isn't shared between modules: comparing the
+     * DOMs of two modules costs about as much as serializing them. The text
+     * is still parsed by each {@code configure()} since relative paths in it
+     * are resolved against the module's base directory.
+     */
+    private String getEmbeddedConfigXml(final Xpp3Dom dom) throws MojoExecutionException {
+        return getSessionCache().get("embeddedConfigXml:" + project.getId(),
+                new SessionCache.Loader<String>() {
+                    public String load() {
+                        return toXml(dom);
+                    }
+                });
+    }
+
+    private static String toXml(Xpp3Dom dom) {
+        StringWriter sw = new StringWriter();
+        XMLWriter xmlWriter = new PrettyPrintXMLWriter(sw, "UTF-8", null);
+        Xpp3DomWriter.write(xmlWriter, dom);
+        return sw.toString();
+    }
+
+    protected File getTmpDir() {
+        File tmpDir = new File(project.getBuild().getDirectory(), "bugvm.tmp");
+        if (tmpDirKey != null) {
+            tmpDir = new File(tmpDir, tmpDirKey);
+        }
+        return tmpDir;
+    }
+
+    /**
+     * Deletes everything in the parent of {@code current} which isn't a
+     * per-configuration tmp dir (e.g. left behind by a non-incremental build)
+     * and then the least recently used tmp dirs until the total size is below
+     * {@link #tmpDirMaxSize}. The sizes are those recorded when the builds
+     * in the dirs finished, see {@link #recordTmpDirSize}.
+     */
+    private void evictTmpDirs(File current) throws IOException {
+        File[] files = current.getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(f2.lastModified(), f1.lastModified());
+            }
+        });
+        long remaining = tmpDirMaxSize * 1024 * 1024;
+        for (File f : files) {
+            if (f.isDirectory() && f.getName().matches("[0-9a-f]{12}")) {
+                remaining -= getTmpDirSize(f);
+                if (remaining >= 0 || f.equals(current)) {
+                    continue;
+                }
+            }
+            getLog().debug("Deleting stale output dir " + f);
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    /**
+     * Records the size of a per-configuration tmp dir once its build has
+     * finished, so {@link #evictTmpDirs} doesn't have to walk every kept dir.
+     */
+    private static void recordTmpDirSize(File tmpDir) throws IOException {
+        FileUtils.writeStringToFile(new File(tmpDir, TMP_DIR_SIZE),
+                String.valueOf(FileUtils.sizeOfDirectory(tmpDir)), "UTF-8");
+    }
+
+    /**
+     * Returns the recorded size of a tmp dir. Dirs without one, e.g. of a
+     * failed build, are measured. Nothing is written to them since that
+     * would change their modification time, which orders the eviction.
+     */
+    private static long getTmpDirSize(File tmpDir) throws IOException {
+        File file = new File(tmpDir, TMP_DIR_SIZE);
+        if (file.isFile()) {
+            try {
+                return Long.parseLong(FileUtils.readFileToString(file, "UTF-8").trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        return FileUtils.sizeOfDirectory(tmpDir);
+    }
+
     protected String getBugVMVersion() {
         return Version.getVersion();
     }
@@ -397,26 +1197,54 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
             // by default unpack into the local repo directory
             unpackBaseDir = new File(distTarFile.getParent(), "unpacked");
         }
-        if (unpackBaseDir.exists() && distTarArtifact.isSnapshot()) {
-            getLog().debug("Deleting directory for unpacked snapshots: " + unpackBaseDir);
-            try {
-                FileUtils.deleteDirectory(unpackBaseDir);
-            } catch (IOException e) {
-                throw new MojoExecutionException(
-                        "Failed to delete " + unpackBaseDir, e);
-            }
-        }
-        unpack(distTarFile, unpackBaseDir);
+        // The tarball contains a single bugvm-<version> directory. Each
+        // version is kept in its own directory below unpackBaseDir.
         File unpackedDir = new File(unpackBaseDir, "bugvm-" + getBugVMVersion());
+        unpack(distTarFile, unpackedDir);
         return unpackedDir;
     }
 
+    /**
+     * Returns the BugVM home to build with. This is either a development
+     * home found on the system or the unpacked bugvm-dist. The result is
+     * shared by all executions in the session with the same version and
+     * {@code home} setting.
+     */
+    protected Home resolveHome() throws MojoExecutionException {
+        String key = "home:" + getBugVMVersion() + ":"
+                + (home != null ? home.getAbsolutePath() : "");
+        return getSessionCache().get(key, new SessionCache.Loader<Home>() {
+            public Home load() throws MojoExecutionException {
+                Home home = null;
+                try {
+                    home = Home.find();
+                } catch (Throwable t) {}
+                if (home == null || !home.isDev()) {
+                    home = new Config.Home(unpackBugVMDist());
+                }
+                return home;
+            }
+        });
+    }
+
     protected Artifact resolveBugVMDistArtifact() throws MojoExecutionException {
 
-        MavenArtifactHandler handler = new MavenArtifactHandler("tar.gz");
-        Artifact artifact = new DefaultArtifact("com.bugvm", "bugvm-dist",
-                getBugVMVersion(), "", "tar.gz", null, handler);
-        return resolveArtifact(artifact);
+        return getSessionCache().get("dist:" + getBugVMVersion(),
+                new SessionCache.Loader<Artifact>() {
+                    public Artifact load() throws MojoExecutionException {
+                        MavenArtifactHandler handler = new MavenArtifactHandler("tar.gz");
+                        Artifact artifact = new DefaultArtifact("com.bugvm", "bugvm-dist",
+                                getBugVMVersion(), "", "tar.gz", null, handler);
+                        return resolveArtifact(artifact);
+                    }
+                });
+    }
+
+    protected synchronized SessionCache getSessionCache() {
+        if (sessionCache == null) {
+            sessionCache = SessionCache.get(session);
+        }
+        return sessionCache;
     }
 
     protected Artifact resolveArtifact(Artifact artifact)
@@ -434,7 +1262,9 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
 
         getLog().debug("Resolving artifact " + artifact);
 
+        BuildMetrics.Phase phase = getMetrics().start("resolve " + artifact.getArtifactId());
         ArtifactResolutionResult result = artifactResolver.resolve(request);
+        phase.stop();
         if (!result.isSuccess()) {
             throw new MojoExecutionException("Unable to resolve artifact: "
                     + artifact);
@@ -444,58 +1274,193 @@ public abstract class AbstractBugVMMojo extends AbstractMojo {
         return artifact;
     }
 
+    /**
+     * Extracts the top-level directory of {@code archive} with the same name
+     * as {@code targetDirectory}, e.g. {@code bugvm-<version>} from the
+     * bugvm-dist tarball, into {@code targetDirectory} unless that has already
+     * been done for an archive with the same checksum. This makes updated
+     * snapshots get re-extracted while unchanged ones are reused. The archive
+     * is extracted into a temporary sibling directory and the directory is
+     * swapped into place once complete, so an interrupted extraction never
+     * leaves a half-populated directory behind. Concurrent builds wait on a
+     * lock file next to the target directory rather than extracting the same
+     * archive again. Nothing else in the parent directory, e.g. the
+     * directories of other versions, is touched. A replaced tree is kept
+     * until the next extraction of the same directory so that builds which
+     * are still using it aren't affected.
+     */
     protected void unpack(File archive, File targetDirectory)
             throws MojoExecutionException {
 
-        if (!targetDirectory.exists()) {
+        File marker = new File(targetDirectory, UNPACKED_MARKER);
+        if (isUnpacked(archive, marker)) {
+            getLog().debug(
+                    "Archive '" + archive + "' was already unpacked in: "
+                            + targetDirectory);
+            return;
+        }
+
+        File parent = targetDirectory.getAbsoluteFile().getParentFile();
+        File tmpDirectory = new File(parent, targetDirectory.getName() + ".tmp");
+        File oldDirectory = new File(parent, targetDirectory.getName() + ".old");
+        LockFile lock = null;
+        try {
+            lock = LockFile.acquire(new File(parent, targetDirectory.getName() + ".lock"));
+            if (isUnpacked(archive, marker)) {
+                getLog().debug(
+                        "Archive '" + archive + "' was unpacked by another build in: "
+                                + targetDirectory);
+                return;
+            }
 
             getLog().info("Extracting '" + archive + "' to: " + targetDirectory);
-            if (!targetDirectory.mkdirs()) {
+            FileUtils.deleteDirectory(tmpDirectory);
+            if (!tmpDirectory.mkdirs()) {
                 throw new MojoExecutionException(
                         "Unable to create base directory to unpack into: "
-                                + targetDirectory);
+                                + tmpDirectory);
             }
-
-            try {
-                UnArchiver unArchiver = archiverManager.getUnArchiver(archive);
-                unArchiver.setSourceFile(archive);
-                unArchiver.setDestDirectory(targetDirectory);
-                unArchiver.extract();
-            } catch (NoSuchArchiverException e) {
-                throw new MojoExecutionException("Unable to unpack archive "
-                        + archive + " to " + targetDirectory, e);
+            BuildMetrics.Phase phase = getMetrics().start("unpack");
+            UnArchiver unArchiver = archiverManager.getUnArchiver(archive);
+            unArchiver.setSourceFile(archive);
+            unArchiver.setDestDirectory(tmpDirectory);
+            unArchiver.extract();
+            phase.stop();
+            File extractedDirectory = new File(tmpDirectory, targetDirectory.getName());
+            if (!extractedDirectory.isDirectory()) {
+                throw new MojoExecutionException("Archive " + archive
+                        + " doesn't contain the directory " + targetDirectory.getName());
+            }
+            writeUnpackedMarker(archive, checksum(archive),
+                    new File(extractedDirectory, UNPACKED_MARKER));
+
+            // Swap in the new tree. Anything already there is either from an
+            // archive with a different checksum or incomplete. It's kept as
+            // .old for builds still using it, only the tree replaced by the
+            // previous extraction is deleted.
+            FileUtils.deleteDirectory(oldDirectory);
+            if (targetDirectory.exists()) {
+                Files.move(targetDirectory.toPath(), oldDirectory.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
             }
+            Files.move(extractedDirectory.toPath(), targetDirectory.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
             getLog().debug(
                     "Archive '" + archive + "' unpacked to: " + targetDirectory);
 
-        } else {
-            getLog().debug(
-                    "Archive '" + archive + "' was already unpacked in: "
-                            + targetDirectory);
+        } catch (NoSuchArchiverException | IOException e) {
+            throw new MojoExecutionException("Unable to unpack archive "
+                    + archive + " to " + targetDirectory, e);
+        } finally {
+            FileUtils.deleteQuietly(tmpDirectory);
+            if (lock != null) {
+                lock.release();
+            }
         }
     }
 
-    protected Logger getBugVMLogger() {
+    /**
+     * Returns {@code true} if {@code marker} says that {@code archive} has
+     * been unpacked. The archive is only checksummed if its size or
+     * modification time differ from those recorded in the marker. If the
+     * checksum still matches the marker is updated with the new values.
+     */
+    private boolean isUnpacked(File archive, File marker) throws MojoExecutionException {
+        if (!marker.exists()) {
+            return false;
+        }
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(marker);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            if (String.valueOf(archive.length()).equals(props.getProperty("size"))
+                    && String.valueOf(archive.lastModified()).equals(props.getProperty("lastModified"))) {
+                return true;
+            }
+            String checksum = checksum(archive);
+            if (checksum.equals(props.getProperty("sha1"))) {
+                writeUnpackedMarker(archive, checksum, marker);
+                return true;
+            }
+            getLog().debug("Archive '" + archive + "' has changed since it was unpacked");
+            return false;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to check " + marker, e);
+        }
+    }
 
-        if (roboVMLogger == null) {
-            roboVMLogger = new Logger() {
-                public void debug(String s, Object... objects) {
-                    getLog().debug(String.format(s, objects));
-                }
+    /**
+     * Writes the marker to a temp file which is then renamed, so that builds
+     * checking the marker without holding the lock never see it half written.
+     */
+    private void writeUnpackedMarker(File archive, String checksum, File marker) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("size", String.valueOf(archive.length()));
+        props.setProperty("lastModified", String.valueOf(archive.lastModified()));
+        props.setProperty("sha1", checksum);
+        File tmp = File.createTempFile(UNPACKED_MARKER, ".tmp", marker.getParentFile());
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, "Unpacked from " + archive);
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), marker.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
 
-                public void info(String s, Object... objects) {
-                    getLog().info(String.format(s, objects));
-                }
+    static String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
 
-                public void warn(String s, Object... objects) {
-                    getLog().warn(String.format(s, objects));
-                }
+    protected Logger getBugVMLogger() {
 
-                public void error(String s, Object... objects) {
-                    getLog().error(String.format(s, objects));
+        if (roboVMLogger == null) {
+            roboVMLogger = new MavenLogger(getLog()) {
+                @Override
+                public void info(String s, Object... objects) {
+                    super.info(s, objects);
+                    // The compiler times these itself
+                    if (s.startsWith("Compiled %d classes in")) {
+                        getMetrics().record("compile", secondsToMillis(objects[1]));
+                    } else if (s.startsWith("Linked %d classes in")) {
+                        getMetrics().record("link", secondsToMillis(objects[1]));
+                    }
                 }
             };
         }
         return roboVMLogger;
     }
+
+    private static long secondsToMillis(Object seconds) {
+        return (long) (((Number) seconds).doubleValue() * 1000);
+    }
 }
@@ -49,7 +49,8 @@ public abstract class AbstractIOSSimulatorMojo extends AbstractBugVMMojo {
         this.deviceFamily = deviceFamily;
     }
 
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
         try {
             Arch arch = Arch.x86_64;
             if (super.arch != null && super.arch.equals(Arch.x86.toString())) {
@@ -65,7 +66,12 @@ public abstract class AbstractIOSSimulatorMojo extends AbstractBugVMMojo {
             DeviceType deviceType = DeviceType.getBestDeviceType(
                     arch, deviceFamily, deviceName, sdk);
             launchParameters.setDeviceType(deviceType);
-            compiler.launch(launchParameters);
+            BuildMetrics.Phase phase = getMetrics().start("launch");
+            try {
+                compiler.launch(launchParameters);
+            } finally {
+                phase.stop();
+            }
 
         } catch (Throwable t) {
             throw new MojoExecutionException("Failed to launch IOS Simulator", t);
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Coordinates the BugVM builds of all modules in a Maven session, e.g. a
+ * parallel ({@code -T}) reactor build. Before compiling, a build claims the
+ * compiler cache entries it may have to compile (see
+ * {@link AbstractBugVMMojo#getPendingCacheUnits}) and the number of compiler
+ * worker threads it will use. A build whose entries overlap with those of a
+ * compiling build waits for them to be released and then finds them already
+ * compiled in the cache. Entries which are already compiled, e.g. the
+ * runtime after the first build, aren't claimed. Builds with disjoint
+ * entries run concurrently as long as the total number of workers doesn't
+ * exceed the number of cores.
+ * <p>
+ * Claims are released once compiling is done, before linking, and entries
+ * can be released early, e.g. once the entries of one arch have been
+ * compiled. Claims are all-or-nothing so builds can't deadlock waiting for
+ * each other.
+ */
+public class BuildCoordinator {
+
+    private final int maxWorkers;
+    private int freeWorkers;
+    private final Set<String> claimed = new HashSet<>();
+
+    public class Claim {
+        private final Set<String> units;
+        private final int workers;
+        private boolean released;
+
+        Claim(Set<String> units, int workers) {
+            this.units = units;
+            this.workers = workers;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * Releases {@code units} while keeping the rest of the claim.
+         */
+        public void release(Collection<String> units) {
+            synchronized (BuildCoordinator.this) {
+                if (!released) {
+                    Set<String> done = new HashSet<>(units);
+                    done.retainAll(this.units);
+                    this.units.removeAll(done);
+                    claimed.removeAll(done);
+                    BuildCoordinator.this.notifyAll();
+                }
+            }
+        }
+
+        public void release() {
+            synchronized (BuildCoordinator.this) {
+                if (!released) {
+                    released = true;
+                    claimed.removeAll(units);
+                    freeWorkers += workers;
+                    BuildCoordinator.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    public BuildCoordinator(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.freeWorkers = this.maxWorkers;
+    }
+
+    /**
+     * Blocks until none of {@code units} is claimed by another build and
+     * {@code workers} workers (capped to the maximum) are available. A build
+     * with nothing to compile claims no units and 0 workers and never waits.
+     */
+    public synchronized Claim claim(Collection<String> units, int workers, Log log)
+            throws InterruptedException {
+
+        workers = Math.max(0, Math.min(workers, maxWorkers));
+        boolean waiting = false;
+        while (overlaps(units) || freeWorkers < workers) {
+            if (!waiting) {
+                log.info("Waiting for other BugVM builds in this session using the same classes or cores");
+                waiting = true;
+            }
+            wait();
+        }
+        Set<String> set = new HashSet<>(units);
+        claimed.addAll(set);
+        freeWorkers -= workers;
+        return new Claim(set, workers);
+    }
+
+    private boolean overlaps(Collection<String> units) {
+        for (String unit : units) {
+            if (claimed.contains(unit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
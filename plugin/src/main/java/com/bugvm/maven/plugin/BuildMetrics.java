@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Records the wall time and peak heap usage of the phases of a BugVM build
+ * (artifact resolution, unpacking, configuration, compilation, linking, etc)
+ * and reports them as JSON and as a table in the log. Phases may overlap,
+ * e.g. the dist is resolved while configuring and several archs may be
+ * compiled concurrently. Heap usage is sampled by a background thread while
+ * phases are running.
+ */
+public class BuildMetrics {
+
+    private static final long SAMPLE_INTERVAL = 50;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final long startTime = System.currentTimeMillis();
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Object> properties = new LinkedHashMap<>();
+    private Thread sampler;
+
+    public class Phase {
+        private final String name;
+        private final long start;
+        private long millis = -1;
+        private long peakHeap;
+
+        Phase(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+
+        /**
+         * Ends this phase. Only the first call has any effect.
+         */
+        public void stop() {
+            synchronized (BuildMetrics.this) {
+                if (millis < 0) {
+                    sample();
+                    millis = System.currentTimeMillis() - start;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts timing a new phase.
+     */
+    public synchronized Phase start(String name) {
+        Phase phase = new Phase(name, System.currentTimeMillis());
+        phases.add(phase);
+        sample();
+        if (sampler == null) {
+            sampler = new Thread("BugVM build metrics sampler") {
+                public void run() {
+                    try {
+                        while (!isInterrupted()) {
+                            Thread.sleep(SAMPLE_INTERVAL);
+                            synchronized (BuildMetrics.this) {
+                                sample();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                    }
+                }
+            };
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+        return phase;
+    }
+
+    /**
+     * Records a phase which has been timed by someone else, e.g. the
+     * compiler, and which ended now. Its peak heap is the highest seen by any
+     * phase still running.
+     */
+    public synchronized void record(String name, long millis) {
+        long now = System.currentTimeMillis();
+        Phase phase = new Phase(name, now - millis);
+        phase.millis = millis;
+        for (Phase p : phases) {
+            if (p.millis < 0) {
+                phase.peakHeap = Math.max(phase.peakHeap, p.peakHeap);
+            }
+        }
+        phases.add(phase);
+    }
+
+    /**
+     * Adds a value which is included in the report as is, e.g. the number of
+     * compiler threads used.
+     */
+    public synchronized void set(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    /**
+     * Stops all running phases and the heap sampler.
+     */
+    public synchronized void finish() {
+        for (Phase p : phases) {
+            p.stop();
+        }
+        if (sampler != null) {
+            sampler.interrupt();
+            sampler = null;
+        }
+    }
+
+    private void sample() {
+        long used = memory.getHeapMemoryUsage().getUsed();
+        for (Phase p : phases) {
+            if (p.millis < 0) {
+                p.peakHeap = Math.max(p.peakHeap, used);
+            }
+        }
+    }
+
+    public synchronized void writeJson(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"startTime\": ").append(startTime).append(",\n");
+        sb.append("  \"totalMillis\": ").append(System.currentTimeMillis() - startTime).append(",\n");
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            sb.append("  ").append(quote(entry.getKey())).append(": ");
+            Object value = entry.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                sb.append(value);
+            } else {
+                sb.append(quote(String.valueOf(value)));
+            }
+            sb.append(",\n");
+        }
+        sb.append("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase p = phases.get(i);
+            sb.append(i > 0 ? ",\n" : "\n");
+            sb.append("    {\"name\": ").append(quote(p.name))
+                    .append(", \"startMillis\": ").append(p.start - startTime)
+                    .append(", \"millis\": ").append(p.millis)
+                    .append(", \"peakHeapBytes\": ").append(p.peakHeap).append("}");
+        }
+        sb.append("\n  ]\n}\n");
+        FileUtils.writeStringToFile(file, sb.toString(), "UTF-8");
+    }
+
+    public synchronized void log(Log log) {
+        log.info("BugVM build phases:");
+        log.info(String.format("  %-24s %10s %14s", "Phase", "Time", "Peak heap"));
+        for (Phase p : phases) {
+            log.info(String.format("  %-24s %9.1fs %11d MB", p.name,
+                    p.millis / 1000.0, p.peakHeap / (1024 * 1024)));
+        }
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            log.info(String.format("  %s: %s", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage of a {@link SharedCache}. Keys are relative paths using {@code /}
+ * as separator.
+ */
+public interface CacheBackend {
+
+    /**
+     * Copies the entry for {@code key} to {@code dest}. Returns {@code false}
+     * if there is no such entry.
+     */
+    boolean fetch(String key, File dest) throws IOException;
+
+    /**
+     * Stores the contents of {@code src} as the entry for {@code key}.
+     * Readers must never see a partially stored entry.
+     */
+    void store(String key, File src) throws IOException;
+}
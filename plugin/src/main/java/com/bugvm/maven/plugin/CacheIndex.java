@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Index of the units in a compiler cache dir ({@code ~/.bugvm/cache}) with
+ * their size and the time they were last used by a build. A unit is the
+ * cache dir of a single classpath entry, located at
+ * {@code <os>/<arch>/<mode>/<path of the entry>}. Builds only update the
+ * units they used so keeping the index current is cheap. A full scan is only
+ * needed when there is no index yet or when asked for explicitly.
+ * <p>
+ * Callers must hold the lock returned by {@link #lock(File)} while using the
+ * index.
+ */
+public class CacheIndex {
+
+    public static final String INDEX_FILE = ".bugvm-cache-index.properties";
+    private static final String LOCK_FILE = ".bugvm-cache-index.lock";
+
+    private final File root;
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private final boolean exists;
+
+    public static class Entry {
+        private final String key;
+        private long size;
+        private long lastUsed;
+
+        Entry(String key, long size, long lastUsed) {
+            this.key = key;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Returns the {@code <os>/<arch>/<mode>} part of the key.
+         */
+        public String getTarget() {
+            String[] parts = key.split("/", 4);
+            return parts.length < 4 ? key : parts[0] + "/" + parts[1] + "/" + parts[2];
+        }
+    }
+
+    public CacheIndex(File root) throws IOException {
+        this.root = root;
+        File file = new File(root, INDEX_FILE);
+        exists = file.exists();
+        if (exists) {
+            Properties props = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            for (String key : props.stringPropertyNames()) {
+                String[] values = props.getProperty(key).split(",");
+                try {
+                    entries.put(key, new Entry(key, Long.parseLong(values[0]), Long.parseLong(values[1])));
+                } catch (RuntimeException e) {
+                    // Ignore corrupt entries, a scan will add them again
+                }
+            }
+        }
+    }
+
+    public static LockFile lock(File root) throws IOException {
+        return LockFile.acquire(new File(root, LOCK_FILE));
+    }
+
+    /**
+     * Returns {@code true} if the index had been saved before.
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public long getTotalSize() {
+        long total = 0;
+        for (Entry e : entries.values()) {
+            total += e.size;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the index key of the unit in {@code dir} or {@code null} if
+     * {@code dir} isn't inside the cache.
+     */
+    public String getKey(File dir) {
+        return getKey(root, dir);
+    }
+
+    static String getKey(File root, File dir) {
+        String rootPath = root.getAbsolutePath() + File.separator;
+        String path = dir.getAbsolutePath();
+        if (!path.startsWith(rootPath)) {
+            return null;
+        }
+        return path.substring(rootPath.length()).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Records that the unit with the specified key has been used now and
+     * updates its size.
+     */
+    public void touch(String key) {
+        File dir = new File(root, key);
+        if (!dir.isDirectory()) {
+            entries.remove(key);
+            return;
+        }
+        entries.put(key, new Entry(key, FileUtils.sizeOfDirectory(dir), System.currentTimeMillis()));
+    }
+
+    /**
+     * Records that the unit with the specified key has been used now
+     * without measuring it again. For units which the build hasn't written
+     * to. Units missing from the index are measured.
+     */
+    public void markUsed(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            touch(key);
+        } else {
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Walks the whole cache, adding units missing from the index, updating
+     * the sizes of all units and removing units which no longer exist. Units
+     * found by the scan are considered last used when their dir was last
+     * modified.
+     */
+    public void scan() {
+        Map<String, Entry> found = new TreeMap<>();
+        File[] oses = root.listFiles();
+        if (oses != null) {
+            for (File os : oses) {
+                for (File arch : listDirs(os)) {
+                    for (File mode : listDirs(arch)) {
+                        for (File dir : listDirs(mode)) {
+                            findUnits(dir, found);
+                        }
+                    }
+                }
+            }
+        }
+        for (Entry e : found.values()) {
+            Entry old = entries.get(e.key);
+            if (old != null) {
+                e.lastUsed = Math.max(e.lastUsed, old.lastUsed);
+            }
+        }
+        entries.clear();
+        entries.putAll(found);
+    }
+
+    /**
+     * A unit is the dir of a jar or zip file or, for class dirs, the first
+     * dir on the way down which contains files. Dirs above it only mirror the
+     * path of the classpath entry.
+     */
+    private void findUnits(File dir, Map<String, Entry> found) {
+        String name = dir.getName().toLowerCase();
+        boolean unit = name.endsWith(".jar") || name.endsWith(".zip");
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        if (!unit) {
+            for (File f : files) {
+                if (f.isFile()) {
+                    unit = true;
+                    break;
+                }
+            }
+        }
+        if (unit) {
+            String key = getKey(dir);
+            found.put(key, new Entry(key, FileUtils.sizeOfDirectory(dir), dir.lastModified()));
+        } else {
+            for (File f : files) {
+                findUnits(f, found);
+            }
+        }
+    }
+
+    private static List<File> listDirs(File dir) {
+        List<File> result = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    result.add(f);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes units not used for more than {@code maxAge} milliseconds and
+     * then the least recently used units until the total size is at most
+     * {@code maxSize} bytes. Units used within the last {@code minIdle}
+     * milliseconds are never deleted since a build may be using them right
+     * now. A limit of 0 or less means no limit. Returns the deleted entries.
+     */
+    public List<Entry> evict(long maxSize, long maxAge, long minIdle) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return Long.compare(e1.lastUsed, e2.lastUsed);
+            }
+        });
+        long now = System.currentTimeMillis();
+        long total = getTotalSize();
+        List<Entry> evicted = new ArrayList<>();
+        for (Entry e : sorted) {
+            if (now - e.lastUsed < minIdle) {
+                break;
+            }
+            boolean tooOld = maxAge > 0 && now - e.lastUsed > maxAge;
+            boolean tooBig = maxSize > 0 && total > maxSize;
+            if (!tooOld && !tooBig) {
+                continue;
+            }
+            FileUtils.deleteDirectory(new File(root, e.key));
+            entries.remove(e.key);
+            total -= e.size;
+            evicted.add(e);
+        }
+        return evicted;
+    }
+
+    public void save() throws IOException {
+        Properties props = new Properties();
+        for (Entry e : entries.values()) {
+            props.setProperty(e.key, e.size + "," + e.lastUsed);
+        }
+        root.mkdirs();
+        File file = new File(root, INDEX_FILE);
+        File tmp = File.createTempFile(INDEX_FILE, ".tmp", root);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, "BugVM cache index: <size in bytes>,<last used>");
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+}
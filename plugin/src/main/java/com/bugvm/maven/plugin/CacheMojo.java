@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Scans the BugVM compiler cache, reports its size per os, arch and build
+ * mode and evicts unused entries according to {@code cacheMaxSize} and
+ * {@code cacheMaxAge}.
+ */
+@Mojo(name = "cache")
+public class CacheMojo extends AbstractBugVMMojo {
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+        File root = getCacheRoot();
+        try {
+            LockFile lock = CacheIndex.lock(root);
+            try {
+                CacheIndex index = new CacheIndex(root);
+                BuildMetrics.Phase phase = getMetrics().start("cache scan");
+                index.scan();
+                phase.stop();
+
+                Map<String, long[]> targets = new TreeMap<>();
+                for (CacheIndex.Entry e : index.getEntries()) {
+                    long[] stats = targets.get(e.getTarget());
+                    if (stats == null) {
+                        stats = new long[2];
+                        targets.put(e.getTarget(), stats);
+                    }
+                    stats[0]++;
+                    stats[1] += e.getSize();
+                }
+                getLog().info("BugVM cache " + root + ":");
+                getLog().info(String.format("  %-32s %8s %10s", "Target", "Entries", "Size"));
+                for (Map.Entry<String, long[]> entry : targets.entrySet()) {
+                    getLog().info(String.format("  %-32s %8d %7d MB", entry.getKey(),
+                            entry.getValue()[0], entry.getValue()[1] / MB));
+                }
+                getLog().info(String.format("  %-32s %8d %7d MB", "Total",
+                        index.getEntries().size(), index.getTotalSize() / MB));
+
+                evictFromCache(index);
+                index.save();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to manage BugVM cache " + root, e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.plugin.logging.Log;
+import com.bugvm.compiler.log.Logger;
+
+/**
+ * The compile phase of a BugVM build running in this JVM. The compiler's
+ * front end (Soot) is a single global instance which every build resets and
+ * reconfigures, so only one build per JVM may compile classes at a time.
+ * Builds which should compile concurrently have to use
+ * {@link ForkedCompiler}.
+ * <p>
+ * A phase holds the JVM wide compiler lock and the build's
+ * {@link BuildCoordinator.Claim} from {@link #begin} until the compiler has
+ * compiled the classes of the last arch. The cache entries of each arch are
+ * released as soon as that arch has been compiled. Linking, which doesn't
+ * use Soot, and installing then run concurrently with the next build. The
+ * compiler has no hook for this which survives its per-arch configs, so the
+ * end of each arch is detected by the message it logs, and the logger
+ * returned by {@link #logger(Logger)} must be set on the config.
+ * {@link #end()} must be called once the build is done in case it failed
+ * before that.
+ */
+public class CompilePhase {
+
+    private static final Semaphore lock = new Semaphore(1, true);
+
+    private List<Set<String>> unitsPerArch;
+    private BuildCoordinator.Claim claim;
+    private boolean locked;
+    private int compiled;
+
+    /**
+     * Returns a logger which passes everything on to {@code logger} and
+     * additionally tracks the progress of the compiler.
+     */
+    public Logger logger(final Logger logger) {
+        return new Logger() {
+            public void debug(String format, Object... args) {
+                logger.debug(format, args);
+            }
+            public void info(String format, Object... args) {
+                logger.info(format, args);
+                if (format.startsWith("Compiled %d classes in")) {
+                    archCompiled();
+                }
+            }
+            public void warn(String format, Object... args) {
+                logger.warn(format, args);
+            }
+            public void error(String format, Object... args) {
+                logger.error(format, args);
+            }
+        };
+    }
+
+    /**
+     * Waits for the compiler lock and then claims the units of all archs
+     * and {@code workers} workers from {@code coordinator}.
+     * {@code unitsPerArch} lists the units of each arch in the order the
+     * compiler builds the archs.
+     */
+    public void begin(BuildCoordinator coordinator, List<Set<String>> unitsPerArch, int workers, Log log)
+            throws InterruptedException {
+
+        if (!lock.tryAcquire()) {
+            log.info("Waiting for another BugVM build in this JVM to finish compiling");
+            lock.acquire();
+        }
+        synchronized (this) {
+            locked = true;
+            this.unitsPerArch = new ArrayList<>(unitsPerArch);
+        }
+        Set<String> units = new HashSet<>();
+        for (Set<String> s : unitsPerArch) {
+            units.addAll(s);
+        }
+        try {
+            BuildCoordinator.Claim c = coordinator.claim(units, workers, log);
+            synchronized (this) {
+                claim = c;
+            }
+        } catch (InterruptedException e) {
+            end();
+            throw e;
+        }
+    }
+
+    private synchronized void archCompiled() {
+        if (unitsPerArch == null || compiled >= unitsPerArch.size()) {
+            return;
+        }
+        if (claim != null) {
+            claim.release(unitsPerArch.get(compiled));
+        }
+        compiled++;
+        if (compiled == unitsPerArch.size()) {
+            end();
+        }
+    }
+
+    /**
+     * Releases the claim and the compiler lock if still held.
+     */
+    public synchronized void end() {
+        if (claim != null) {
+            claim.release();
+            claim = null;
+        }
+        if (locked) {
+            locked = false;
+            lock.release();
+        }
+    }
+}
@@ -36,7 +36,7 @@ import com.bugvm.compiler.target.LaunchParameters;
 public class ConsoleMojo extends AbstractBugVMMojo {
 
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
 
         try {
 
@@ -49,7 +49,12 @@ public class ConsoleMojo extends AbstractBugVMMojo {
             Config config = compiler.getConfig();
             LaunchParameters launchParameters = config.getTarget()
                     .createLaunchParameters();
-            compiler.launch(launchParameters);
+            BuildMetrics.Phase phase = getMetrics().start("launch");
+            try {
+                compiler.launch(launchParameters);
+            } finally {
+                phase.stop();
+            }
 
         } catch (Throwable t) {
             throw new MojoExecutionException("Failed to launch console application", t);
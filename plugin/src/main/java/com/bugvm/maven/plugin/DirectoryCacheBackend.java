@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * {@link CacheBackend} storing entries as files in a directory, e.g. on a
+ * network file system shared by all build machines. Entries are copied to a
+ * temp file next to their final location and then renamed.
+ */
+public class DirectoryCacheBackend implements CacheBackend {
+
+    private final File root;
+
+    public DirectoryCacheBackend(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public boolean fetch(String key, File dest) throws IOException {
+        File f = new File(root, key);
+        if (!f.isFile()) {
+            return false;
+        }
+        FileUtils.copyFile(f, dest);
+        return true;
+    }
+
+    @Override
+    public void store(String key, File src) throws IOException {
+        File f = new File(root, key);
+        if (f.exists()) {
+            return;
+        }
+        f.getParentFile().mkdirs();
+        File tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+        try {
+            FileUtils.copyFile(src, tmp);
+            try {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), f.toPath());
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Stored by someone else in the meantime
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root.getAbsolutePath();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+import com.bugvm.compiler.AppCompiler;
+import com.bugvm.compiler.config.Config;
+
+/**
+ * Compiles the classes of a BugVM config into the cache without linking in a
+ * separate JVM running {@link ForkedCompilerMain}. The compiler's front end
+ * (Soot) is a single global instance which every build resets and
+ * reconfigures, so builds which should compile at the same time, e.g. for
+ * several archs, have to run in separate processes.
+ * <p>
+ * The config is passed on as a config file. Settings which aren't part of
+ * the config file, e.g. the home, cache and tmp dirs, are passed as command
+ * line options. The log output of the forked JVM is passed on to the Maven
+ * log with {@code label} as prefix.
+ */
+public class ForkedCompiler {
+
+    private final String label;
+    private final Config config;
+    private final Log log;
+    private long maxHeap;
+
+    public ForkedCompiler(String label, Config config, Log log) {
+        this.label = label;
+        this.config = config;
+        this.log = log;
+    }
+
+    /**
+     * Sets the maximum heap size in bytes of the forked JVM. The JVM's
+     * default is used if not set.
+     */
+    public ForkedCompiler maxHeap(long maxHeap) {
+        this.maxHeap = maxHeap;
+        return this;
+    }
+
+    /**
+     * Starts the JVM and waits for it to exit. The JVM is killed if the
+     * calling thread is interrupted.
+     */
+    public void compile() throws IOException, InterruptedException {
+        File dir = config.getTmpDir();
+        dir.mkdirs();
+        File configFile = new File(dir, "forked-config.xml");
+        File propertiesFile = new File(dir, "forked-config.properties");
+        config.builder().write(configFile);
+        OutputStream out = new FileOutputStream(propertiesFile);
+        try {
+            config.getProperties().store(out, null);
+        } finally {
+            out.close();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        if (maxHeap > 0) {
+            command.add("-Xmx" + maxHeap / AbstractBugVMMojo.MB + "m");
+        }
+        command.add("-cp");
+        command.add(getCodeSource(ForkedCompilerMain.class) + File.pathSeparator
+                + getCodeSource(AppCompiler.class));
+        command.add(ForkedCompilerMain.class.getName());
+        if (!config.getHome().isDev()) {
+            command.add("-home");
+            command.add(config.getHome().getBinDir().getParentFile().getAbsolutePath());
+        }
+        command.add("-cache");
+        command.add(config.getCacheDir().getAbsolutePath());
+        command.add("-tmp");
+        command.add(config.getTmpDir().getAbsolutePath());
+        command.add("-properties");
+        command.add(propertiesFile.getAbsolutePath());
+        command.add("-threads");
+        command.add(String.valueOf(config.getThreads()));
+        if (config.isDebug()) {
+            command.add("-debug");
+        }
+        if (config.isUseDebugLibs()) {
+            command.add("-use-debug-libs");
+        }
+        if (config.isDumpIntermediates()) {
+            command.add("-dump-intermediates");
+        }
+        if (config.isClean()) {
+            command.add("-clean");
+        }
+        if (log.isDebugEnabled()) {
+            command.add("-verbose");
+            log.debug("Starting forked compiler for " + label + ": " + command);
+        }
+        command.add(configFile.getAbsolutePath());
+
+        final Process process = new ProcessBuilder(command)
+                .directory(dir)
+                .redirectErrorStream(true)
+                .start();
+        Thread pump = new Thread("bugvm-forked-compiler-" + label) {
+            public void run() {
+                pump(process);
+            }
+        };
+        pump.setDaemon(true);
+        pump.start();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            throw e;
+        } finally {
+            pump.join(10000);
+        }
+        if (exitCode != 0) {
+            throw new IOException("Forked compiler for " + label + " failed with exit code " + exitCode);
+        }
+    }
+
+    private void pump(Process process) {
+        String prefix = "[" + label + "] ";
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(ForkedCompilerMain.DEBUG)) {
+                        log.debug(prefix + line.substring(ForkedCompilerMain.DEBUG.length()));
+                    } else if (line.startsWith(ForkedCompilerMain.INFO)) {
+                        log.info(prefix + line.substring(ForkedCompilerMain.INFO.length()));
+                    } else if (line.startsWith(ForkedCompilerMain.WARN)) {
+                        log.warn(prefix + line.substring(ForkedCompilerMain.WARN.length()));
+                    } else if (line.startsWith(ForkedCompilerMain.ERROR)) {
+                        log.error(prefix + line.substring(ForkedCompilerMain.ERROR.length()));
+                    } else {
+                        log.info(prefix + line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to read output of forked compiler for " + label, e);
+        }
+    }
+
+    private static String getCodeSource(Class<?> cls) throws IOException {
+        URL url = cls.getProtectionDomain().getCodeSource().getLocation();
+        try {
+            return new File(url.toURI()).getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unsupported location of " + cls.getName() + ": " + url, e);
+        }
+    }
+}
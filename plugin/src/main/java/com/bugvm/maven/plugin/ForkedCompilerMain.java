@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import com.bugvm.compiler.AppCompiler;
+import com.bugvm.compiler.config.Config;
+import com.bugvm.compiler.config.Config.Home;
+import com.bugvm.compiler.log.Logger;
+
+/**
+ * Entry point of the JVMs started by {@link ForkedCompiler}. Reads the
+ * config written by the parent, compiles its classes into the cache without
+ * linking and exits with status 0 on success. Every line logged is written
+ * to stdout prefixed with its level.
+ * <p>
+ * Only the compiler and this class are on the classpath of the forked JVM,
+ * so this must not use any Maven classes.
+ */
+public class ForkedCompilerMain {
+
+    static final String DEBUG = "DEBUG ";
+    static final String INFO = "INFO ";
+    static final String WARN = "WARN ";
+    static final String ERROR = "ERROR ";
+
+    public static void main(String[] args) {
+        try {
+            compile(args);
+        } catch (Throwable t) {
+            StringWriter sw = new StringWriter();
+            t.printStackTrace(new PrintWriter(sw));
+            print(ERROR, sw.toString());
+            System.out.flush();
+            System.exit(1);
+        }
+        System.out.flush();
+        System.exit(0);
+    }
+
+    private static void compile(String[] args) throws Exception {
+        File home = null;
+        File cacheDir = null;
+        File tmpDir = null;
+        File properties = null;
+        int threads = 0;
+        boolean debug = false;
+        boolean useDebugLibs = false;
+        boolean dumpIntermediates = false;
+        boolean clean = false;
+        boolean verbose = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            String arg = args[i];
+            if ("-home".equals(arg)) {
+                home = new File(args[++i]);
+            } else if ("-cache".equals(arg)) {
+                cacheDir = new File(args[++i]);
+            } else if ("-tmp".equals(arg)) {
+                tmpDir = new File(args[++i]);
+            } else if ("-properties".equals(arg)) {
+                properties = new File(args[++i]);
+            } else if ("-threads".equals(arg)) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-debug".equals(arg)) {
+                debug = true;
+            } else if ("-use-debug-libs".equals(arg)) {
+                useDebugLibs = true;
+            } else if ("-dump-intermediates".equals(arg)) {
+                dumpIntermediates = true;
+            } else if ("-clean".equals(arg)) {
+                clean = true;
+            } else if ("-verbose".equals(arg)) {
+                verbose = true;
+            } else {
+                throw new IllegalArgumentException("Unrecognized option: " + arg);
+            }
+        }
+        if (i != args.length - 1) {
+            throw new IllegalArgumentException("Expected a single config file");
+        }
+
+        // Same order as in AbstractBugVMMojo.configure(): properties, config
+        // file and then the settings which aren't part of the config file
+        Config.Builder builder = new Config.Builder();
+        if (properties != null) {
+            builder.addProperties(properties);
+        }
+        builder.read(new File(args[i]));
+        // A dev home is found the same way as in the parent JVM
+        builder.home(home != null ? new Home(home) : Home.find())
+                .tmpDir(tmpDir)
+                .debug(debug)
+                .useDebugLibs(useDebugLibs)
+                .dumpIntermediates(dumpIntermediates)
+                .clean(clean);
+        if (cacheDir != null) {
+            builder.cacheDir(cacheDir);
+        }
+        if (threads > 0) {
+            builder.threads(threads);
+        }
+
+        final boolean debugEnabled = verbose;
+        builder.logger(new Logger() {
+            public void debug(String format, Object... args) {
+                if (debugEnabled) {
+                    print(DEBUG, format(format, args));
+                }
+            }
+            public void info(String format, Object... args) {
+                print(INFO, format(format, args));
+            }
+            public void warn(String format, Object... args) {
+                print(WARN, format(format, args));
+            }
+            public void error(String format, Object... args) {
+                print(ERROR, format(format, args));
+            }
+        });
+
+        // Signing and linking are left to the build in the parent JVM
+        builder.skipLinking(true)
+                .skipInstall(true)
+                .iosSkipSigning(true);
+
+        new AppCompiler(builder.build()).build();
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(format, args);
+    }
+
+    private static synchronized void print(String level, String message) {
+        for (String line : message.split("\r?\n")) {
+            System.out.println(level + line);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * {@link CacheBackend} storing entries on an HTTP server. Entries are
+ * fetched using {@code GET} and stored using {@code PUT} on the base URL
+ * followed by the key. Any server or proxy supporting these, e.g. a generic
+ * repository manager or a WebDAV enabled web server, can be used.
+ */
+public class HttpCacheBackend implements CacheBackend {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 60000;
+
+    private final String baseUrl;
+
+    public HttpCacheBackend(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    private HttpURLConnection open(String key, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + key).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        return conn;
+    }
+
+    @Override
+    public boolean fetch(String key, File dest) throws IOException {
+        HttpURLConnection conn = open(key, "GET");
+        try {
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("GET " + conn.getURL() + " failed: " + status + " "
+                        + conn.getResponseMessage());
+            }
+            InputStream in = conn.getInputStream();
+            try {
+                OutputStream out = new FileOutputStream(dest);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            return true;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Override
+    public void store(String key, File src) throws IOException {
+        HttpURLConnection conn = open(key, "PUT");
+        try {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/zip");
+            conn.setFixedLengthStreamingMode(src.length());
+            OutputStream out = conn.getOutputStream();
+            try {
+                InputStream in = new FileInputStream(src);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    in.close();
+                }
+            } finally {
+                out.close();
+            }
+            int status = conn.getResponseCode();
+            if (status < 200 || status > 299) {
+                throw new IOException("PUT " + conn.getURL() + " failed: " + status + " "
+                        + conn.getResponseMessage());
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl;
+    }
+}
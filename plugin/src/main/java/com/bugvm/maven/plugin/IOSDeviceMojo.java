@@ -35,7 +35,7 @@ import com.bugvm.compiler.target.ios.IOSTarget;
 public class IOSDeviceMojo extends AbstractBugVMMojo {
 
     @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
 
         try {
 
@@ -48,7 +48,12 @@ public class IOSDeviceMojo extends AbstractBugVMMojo {
             Config config = compiler.getConfig();
             LaunchParameters launchParameters = config.getTarget()
                     .createLaunchParameters();
-            compiler.launch(launchParameters);
+            BuildMetrics.Phase phase = getMetrics().start("launch");
+            try {
+                compiler.launch(launchParameters);
+            } finally {
+                phase.stop();
+            }
 
         } catch (Throwable t) {
             throw new MojoExecutionException("Failed to launch IOS Device", t);
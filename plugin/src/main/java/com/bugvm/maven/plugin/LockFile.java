@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Exclusive lock on a file which works both between processes and between
+ * threads of the same JVM, e.g. modules of a parallel ({@code -T}) build.
+ * {@link FileLock} alone only protects against other processes.
+ */
+public class LockFile {
+
+    private final RandomAccessFile file;
+    private final FileLock lock;
+
+    private LockFile(RandomAccessFile file, FileLock lock) {
+        this.file = file;
+        this.lock = lock;
+    }
+
+    /**
+     * Blocks until the lock on {@code f} has been acquired. The file is
+     * created if it doesn't exist.
+     */
+    public static LockFile acquire(File f) throws IOException {
+        f.getAbsoluteFile().getParentFile().mkdirs();
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        try {
+            while (true) {
+                try {
+                    return new LockFile(file, file.getChannel().lock());
+                } catch (OverlappingFileLockException e) {
+                    // Held by another thread in this JVM
+                    Thread.sleep(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            file.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for lock on " + f);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public void release() {
+        try {
+            lock.release();
+        } catch (IOException e) {
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+}
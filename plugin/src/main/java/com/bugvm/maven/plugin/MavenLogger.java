@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import org.apache.maven.plugin.logging.Log;
+import com.bugvm.compiler.log.Logger;
+
+/**
+ * Passes BugVM compiler log messages on to the Maven {@link Log}. Messages
+ * are only formatted if their level is enabled. The compiler logs a debug
+ * message per class so formatting them eagerly is expensive when debug
+ * logging is off.
+ */
+public class MavenLogger implements Logger {
+
+    private final Log log;
+
+    public MavenLogger(Log log) {
+        this.log = log;
+    }
+
+    public void debug(String format, Object... args) {
+        if (log.isDebugEnabled()) {
+            log.debug(format(format, args));
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (log.isInfoEnabled()) {
+            log.info(format(format, args));
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        if (log.isWarnEnabled()) {
+            log.warn(format(format, args));
+        }
+    }
+
+    public void error(String format, Object... args) {
+        if (log.isErrorEnabled()) {
+            log.error(format(format, args));
+        }
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(format, args);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Values shared by all BugVM mojo executions in the same Maven session, e.g.
+ * the resolved bugvm-dist artifact and {@code Home}. Each value is computed
+ * once. In a parallel build other modules asking for the same value block
+ * until the first one has computed it. Failures aren't cached.
+ * <p>
+ * Maven gives each project of a reactor build a shallow clone of the
+ * session, so the caches are looked up by the session's
+ * {@link MavenExecutionRequest}, which all the clones share.
+ */
+public class SessionCache {
+
+    private static final Map<MavenExecutionRequest, SessionCache> caches = new WeakHashMap<>();
+
+    private final ConcurrentMap<String, FutureTask<Object>> values = new ConcurrentHashMap<>();
+
+    /**
+     * Computes a value which isn't in the cache yet.
+     */
+    public interface Loader<T> {
+        T load() throws MojoExecutionException;
+    }
+
+    /**
+     * Returns the cache for {@code session} and all its clones. If
+     * {@code session} is {@code null} a new unshared cache is returned.
+     */
+    public static synchronized SessionCache get(MavenSession session) {
+        if (session == null) {
+            return new SessionCache();
+        }
+        SessionCache cache = caches.get(session.getRequest());
+        if (cache == null) {
+            cache = new SessionCache();
+            caches.put(session.getRequest(), cache);
+        }
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, final Loader<T> loader) throws MojoExecutionException {
+        FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+            public Object call() throws Exception {
+                return loader.load();
+            }
+        });
+        FutureTask<Object> existing = values.putIfAbsent(key, task);
+        if (existing == null) {
+            task.run();
+        } else {
+            task = existing;
+        }
+        try {
+            return (T) task.get();
+        } catch (ExecutionException e) {
+            values.remove(key, task);
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            }
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for " + key, e);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import com.bugvm.compiler.Version;
+import com.bugvm.compiler.clazz.Path;
+import com.bugvm.compiler.config.Arch;
+import com.bugvm.compiler.config.Config;
+import com.bugvm.maven.common.BuildFingerprint;
+
+/**
+ * Second tier behind the local compiler cache ({@code ~/.bugvm/cache}) which
+ * is shared by several machines, e.g. CI agents. The unit of sharing is the
+ * cache directory of a jar file on the classpath, i.e. the objects compiled
+ * from all classes in the jar. Units are stored zipped under
+ * {@code <compiler version>/<os>/<arch>/<mode>/<sha1 of the jar>/<sha1 of the classpath>.zip}
+ * where the classpath hash covers the contents of all jars on the boot
+ * classpath and classpath. The objects of a jar depend on the classes it
+ * references in other jars, so a unit is only reused with exactly the same
+ * dependencies, e.g. not after a SNAPSHOT dependency has changed.
+ * Directories of classes, e.g. the project's own classes, change too often
+ * to be worth sharing and are left to the local cache.
+ * <p>
+ * The compiler also records the locations of the classes each object depends
+ * on and recompiles a class when they're found elsewhere. Units fetched by a
+ * machine which keeps the jars in different locations than the machine which
+ * built them are fetched but partly recompiled.
+ * <p>
+ * Before a build, units missing from the local cache are fetched from the
+ * backend. In read-write mode units which were missing from the backend are
+ * uploaded after the build. Failures talking to the backend are logged but
+ * never fail the build.
+ */
+public class SharedCache {
+
+    public static final String MODE_READ_ONLY = "read-only";
+    public static final String MODE_READ_WRITE = "read-write";
+
+    private final CacheBackend backend;
+    private final boolean readWrite;
+    private final Log log;
+    private final List<Unit> missing = new ArrayList<>();
+    private final Map<String, String> checksums = new HashMap<>();
+    private int hits;
+    private int misses;
+    private int uploads;
+    private int errors;
+
+    static class Unit {
+        final String key;
+        final File dir;
+
+        Unit(String key, File dir) {
+            this.key = key;
+            this.dir = dir;
+        }
+    }
+
+    public SharedCache(CacheBackend backend, boolean readWrite, Log log) {
+        this.backend = backend;
+        this.readWrite = readWrite;
+        this.log = log;
+    }
+
+    /**
+     * Creates a cache for {@code location} which is either an http(s) URL or
+     * a directory.
+     */
+    public static SharedCache create(String location, String mode, Log log) {
+        if (!MODE_READ_ONLY.equals(mode) && !MODE_READ_WRITE.equals(mode)) {
+            throw new IllegalArgumentException("Unsupported shared cache mode '" + mode
+                    + "'. Must be one of " + MODE_READ_ONLY + " and " + MODE_READ_WRITE);
+        }
+        CacheBackend backend;
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            backend = new HttpCacheBackend(location);
+        } else {
+            backend = new DirectoryCacheBackend(new File(location));
+        }
+        return new SharedCache(backend, MODE_READ_WRITE.equals(mode), log);
+    }
+
+    public boolean isReadWrite() {
+        return readWrite;
+    }
+
+    /**
+     * Fetches the units of all jar files on the classpath of {@code config}
+     * which are missing from the local cache.
+     */
+    public synchronized void pull(Config config) throws IOException {
+        for (Config c : perArch(config)) {
+            String namespace = getNamespace(c);
+            List<Path> paths = c.getClazzes().getPaths();
+            String classpathHash = null;
+            long newestInput = 0;
+            for (Path path : paths) {
+                File file = path.getFile();
+                File dir = c.getCacheDir(path);
+                if (!file.isFile() || !isEmpty(dir)) {
+                    continue;
+                }
+                if (classpathHash == null) {
+                    classpathHash = getClasspathHash(paths);
+                    newestInput = getNewestJar(paths);
+                }
+                pull(new Unit(namespace + "/" + checksum(file) + "/" + classpathHash + ".zip", dir),
+                        newestInput);
+            }
+        }
+    }
+
+    /**
+     * Fetches a single unit into its local cache dir. The extracted objects
+     * are made at least as new as {@code newestInput}, see
+     * {@link #unzip(File, File, long)}.
+     */
+    synchronized void pull(Unit unit, long newestInput) {
+        try {
+            File zip = File.createTempFile("bugvm-cache", ".zip");
+            try {
+                if (backend.fetch(unit.key, zip)) {
+                    unzip(zip, unit.dir, newestInput);
+                    hits++;
+                    log.debug("Fetched " + unit.dir.getName() + " from shared cache: " + unit.key);
+                } else {
+                    misses++;
+                    missing.add(unit);
+                }
+            } finally {
+                zip.delete();
+            }
+        } catch (IOException e) {
+            errors++;
+            log.warn("Failed to fetch " + unit.key + " from shared cache " + backend + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Uploads the units which were missing from the backend when
+     * {@link #pull(Config)} was called and which have been compiled since.
+     * Does nothing in read-only mode.
+     */
+    public synchronized void push() {
+        if (!readWrite) {
+            return;
+        }
+        for (Unit unit : missing) {
+            if (isEmpty(unit.dir)) {
+                continue;
+            }
+            try {
+                File zip = File.createTempFile("bugvm-cache", ".zip");
+                try {
+                    zip(unit.dir, zip);
+                    backend.store(unit.key, zip);
+                    uploads++;
+                } finally {
+                    zip.delete();
+                }
+            } catch (IOException e) {
+                errors++;
+                log.warn("Failed to store " + unit.key + " in shared cache " + backend + ": " + e.getMessage());
+            }
+        }
+        missing.clear();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getUploads() {
+        return uploads;
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    public synchronized void logStats() {
+        int total = hits + misses;
+        log.info(String.format("Shared cache %s: %d hits, %d misses (%d%% hit rate), %d uploads, %d errors",
+                backend, hits, misses, total > 0 ? hits * 100 / total : 0, uploads, errors));
+    }
+
+    /**
+     * The compiler uses a separate config for each arch of a multi-arch
+     * build, each with its own cache dir.
+     */
+    private static List<Config> perArch(Config config) throws IOException {
+        List<Arch> archs = config.getArchs();
+        if (archs == null || archs.size() <= 1) {
+            return Collections.singletonList(config);
+        }
+        List<Config> configs = new ArrayList<>();
+        for (Arch arch : archs) {
+            configs.add(config.builder().arch(arch).archs(Collections.singletonList(arch)).build());
+        }
+        return configs;
+    }
+
+    /**
+     * Hashes the contents of the jars on the boot classpath and classpath in
+     * classpath order. Jar checksums are remembered for the lifetime of this
+     * cache as long as the jar's size and modification time are unchanged.
+     */
+    private String getClasspathHash(List<Path> paths) throws IOException {
+        BuildFingerprint fingerprint = new BuildFingerprint();
+        for (Path path : paths) {
+            File file = path.getFile();
+            if (file.isFile()) {
+                fingerprint.add(path.isInBootClasspath() ? "boot" : "classpath", checksum(file));
+            }
+        }
+        return fingerprint.getHash();
+    }
+
+    private String checksum(File file) throws IOException {
+        String id = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String checksum = checksums.get(id);
+        if (checksum == null) {
+            checksum = AbstractBugVMMojo.checksum(file);
+            checksums.put(id, checksum);
+        }
+        return checksum;
+    }
+
+    private static long getNewestJar(List<Path> paths) {
+        long newest = 0;
+        for (Path path : paths) {
+            File file = path.getFile();
+            if (file.isFile()) {
+                newest = Math.max(newest, file.lastModified());
+            }
+        }
+        return newest;
+    }
+
+    private static String getNamespace(Config config) {
+        return Version.getVersion() + "/" + config.getOs() + "/" + config.getArch() + "/"
+                + config.getCacheDir().getName();
+    }
+
+    private static boolean isEmpty(File dir) {
+        String[] names = dir.list();
+        return names == null || names.length == 0;
+    }
+
+    private static void zip(File dir, File zip) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            zip(dir, "", out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void zip(File dir, String prefix, ZipOutputStream out) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                zip(f, prefix + f.getName() + "/", out);
+            } else {
+                ZipEntry entry = new ZipEntry(prefix + f.getName());
+                entry.setTime(f.lastModified());
+                out.putNextEntry(entry);
+                InputStream in = new FileInputStream(f);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Extracts {@code zip} into a temp dir next to {@code dir} and renames it
+     * into place so the compiler never sees a partial unit. The extracted
+     * files keep their modification times from the machine which built them
+     * unless older than {@code newestInput}, the newest local jar on the
+     * classpath. The compiler considers objects older than the classes they
+     * were compiled from or depend on outdated, and the local copies of the
+     * jars usually are newer. The unit key guarantees they have the same
+     * contents as the jars the objects were compiled from, while jars
+     * changing after this still make the compiler recompile.
+     */
+    private static void unzip(File zip, File dir, long newestInput) throws IOException {
+        dir.getParentFile().mkdirs();
+        File tmp = new File(dir.getParentFile(), dir.getName() + ".tmp" + System.nanoTime());
+        String root = tmp.getCanonicalPath() + File.separator;
+        try {
+            ZipInputStream in = new ZipInputStream(new FileInputStream(zip));
+            try {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    File f = new File(tmp, entry.getName());
+                    if (!f.getCanonicalPath().startsWith(root)) {
+                        throw new IOException("Invalid entry in shared cache unit: " + entry.getName());
+                    }
+                    if (entry.isDirectory()) {
+                        f.mkdirs();
+                        continue;
+                    }
+                    f.getParentFile().mkdirs();
+                    OutputStream out = new FileOutputStream(f);
+                    try {
+                        IOUtils.copy(in, out);
+                    } finally {
+                        out.close();
+                    }
+                    f.setLastModified(Math.max(entry.getTime(), newestInput));
+                }
+            } finally {
+                in.close();
+            }
+            if (dir.exists() && isEmpty(dir)) {
+                dir.delete();
+            }
+            if (!dir.exists() && !tmp.renameTo(dir)) {
+                // Populated by a concurrent build
+                if (isEmpty(dir)) {
+                    throw new IOException("Failed to move " + tmp + " to " + dir);
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import com.bugvm.compiler.config.Arch;
+import com.bugvm.compiler.config.Config;
+import com.bugvm.compiler.config.OS;
+import com.bugvm.compiler.target.ConsoleTarget;
+import com.bugvm.compiler.target.ios.IOSTarget;
+
+/**
+ * Compiles all classes in the runtime libraries and the dependency jars of
+ * the project into the compiler cache without linking an app. Subsequent
+ * builds, e.g. on a CI image baked after running this goal, then only have
+ * to compile the project's own classes.
+ */
+@Mojo(name = "warm-cache", requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class WarmCacheMojo extends AbstractBugVMMojo {
+
+    /**
+     * Comma separated list of {@code <os>:<arch>} pairs to compile for, e.g.
+     * {@code ios:arm64,ios:thumbv7,ios:x86_64}. Defaults to the os and arch of
+     * the current host.
+     */
+    @Parameter(property="bugvm.warmCache.targets")
+    protected String targets;
+
+    /**
+     * The maximum number of targets to compile concurrently, each in its own
+     * JVM. Defaults to the number of available processors.
+     */
+    @Parameter(property="bugvm.warmCache.parallelism")
+    protected int parallelism = -1;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+        List<OS> oses = new ArrayList<>();
+        List<Arch> archs = new ArrayList<>();
+        if (targets == null || targets.trim().isEmpty()) {
+            oses.add(OS.getDefaultOS());
+            archs.add(Arch.getDefaultArch());
+        } else {
+            for (String target : targets.split(",")) {
+                String[] parts = target.trim().split(":");
+                if (parts.length != 2) {
+                    throw new MojoExecutionException("Invalid target '" + target
+                            + "'. Expected <os>:<arch>");
+                }
+                oses.add(OS.valueOf(parts[0]));
+                archs.add(Arch.valueOf(parts[1]));
+            }
+        }
+
+        int forks = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        forks = Math.max(1, Math.min(forks, oses.size()));
+
+        // configure() wipes the tmp dir each time it's called, so the targets
+        // are compiled in dirs of their own
+        File warmDir = new File(project.getBuild().getDirectory(), "bugvm-warm.tmp");
+        Map<String, Config> configs = new LinkedHashMap<>();
+        try {
+            FileUtils.deleteDirectory(warmDir);
+            File outputDir = new File(project.getBuild().getOutputDirectory()).getAbsoluteFile();
+            for (int i = 0; i < oses.size(); i++) {
+                OS os = oses.get(i);
+                Arch arch = archs.get(i);
+                Config.Builder builder = configure(new Config.Builder())
+                        .os(os)
+                        .arch(arch)
+                        .targetType(os == OS.ios ? IOSTarget.TYPE : ConsoleTarget.TYPE)
+                        .tmpDir(new File(warmDir, os + "-" + arch))
+                        // Share the compiler threads between the concurrent compilers
+                        .threads(getForkedCompilerThreads(forks))
+                        .skipLinking(true)
+                        .skipInstall(true);
+                // The bootclasspath is only known once the config has been built
+                Config config = builder.build();
+                builder = config.builder();
+                List<File> jars = new ArrayList<>(config.getBootclasspath());
+                jars.addAll(config.getClasspath());
+                int count = 0;
+                for (File jar : jars) {
+                    if (jar.isFile() && !jar.getAbsoluteFile().equals(outputDir)) {
+                        for (String pattern : getPackagePatterns(jar)) {
+                            builder.addForceLinkClass(pattern);
+                            count++;
+                        }
+                    }
+                }
+                getLog().debug("Force linking " + count + " packages for " + os + " (" + arch + ")");
+                configs.put(os + "/" + arch, builder.build());
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to configure BugVM cache warm-up", e);
+        }
+
+        compileForked(configs, forks);
+
+        for (Config config : configs.values()) {
+            updateCacheIndex(config);
+        }
+    }
+
+    /**
+     * Returns a force link pattern for each package with classes in
+     * {@code jar}.
+     */
+    private static Set<String> getPackagePatterns(File jar) throws IOException {
+        Set<String> patterns = new TreeSet<>();
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+                String name = e.nextElement().getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")
+                        || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                int slash = name.lastIndexOf('/');
+                if (slash == -1) {
+                    patterns.add(name.substring(0, name.length() - ".class".length()));
+                } else {
+                    patterns.add(name.substring(0, slash).replace('/', '.') + ".*");
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import com.bugvm.compiler.AppCompiler;
+import com.bugvm.compiler.config.Arch;
+import com.bugvm.compiler.config.OS;
+import com.bugvm.compiler.target.ConsoleTarget;
+import com.bugvm.compiler.target.LaunchParameters;
+
+/**
+ * Compiles your application, runs it as a console application on the current
+ * host and then watches the project's output directories. Whenever something
+ * changes the running app is stopped, rebuilt and relaunched. The resolved
+ * BugVM home stays loaded and the compiler cache only recompiles the classes
+ * which have changed, so every iteration skips Maven startup, dependency
+ * resolution and the dist lookup. Stop watching with Ctrl-C.
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class WatchMojo extends AbstractBugVMMojo {
+
+    /**
+     * The interval in milliseconds between checks for changed files.
+     */
+    @Parameter(property="bugvm.watchInterval")
+    protected long watchInterval = 1000;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+
+        Arch arch = Arch.getDefaultArch();
+        if (super.arch != null) {
+            arch = Arch.valueOf(super.arch);
+        }
+        // Keep the tmp dir between iterations
+        incremental = true;
+
+        AppCompiler compiler = null;
+        Process process = null;
+        try {
+            while (true) {
+                Map<File, Long> snapshot = snapshot();
+                try {
+                    compiler = build(OS.getDefaultOS(), arch, ConsoleTarget.TYPE);
+                    LaunchParameters launchParameters = compiler.getConfig().getTarget()
+                            .createLaunchParameters();
+                    process = compiler.launchAsync(launchParameters);
+                } catch (Throwable t) {
+                    getLog().error("Failed to build and launch console application", t);
+                }
+
+                getLog().info("Watching for changes...");
+                boolean exited = false;
+                while (snapshot.equals(snapshot())) {
+                    Thread.sleep(watchInterval);
+                    if (process != null && !exited && !isAlive(process)) {
+                        getLog().info("Console application exited with code " + process.exitValue());
+                        exited = true;
+                    }
+                }
+
+                getLog().info("Changes detected, rebuilding");
+                stop(compiler, process);
+                compiler = null;
+                process = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stop(compiler, process);
+        }
+    }
+
+    private void stop(AppCompiler compiler, Process process) {
+        if (process != null) {
+            process.destroy();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (compiler != null) {
+            compiler.launchAsyncCleanup();
+        }
+    }
+
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the modification times of all files on the runtime classpath
+     * and of the BugVM config files.
+     */
+    private Map<File, Long> snapshot() throws MojoExecutionException {
+        Map<File, Long> snapshot = new HashMap<>();
+        try {
+            for (Object object : project.getRuntimeClasspathElements()) {
+                snapshot(new File((String) object), snapshot);
+            }
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(
+                    "Error resolving application classpath for BugVM build", e);
+        }
+        File basedir = project.getBasedir();
+        snapshot(propertiesFile != null ? propertiesFile : new File(basedir, "bugvm.properties"), snapshot);
+        snapshot(configFile != null ? configFile : new File(basedir, "bugvm.xml"), snapshot);
+        return snapshot;
+    }
+
+    private static void snapshot(File file, Map<File, Long> snapshot) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                snapshot(f, snapshot);
+            }
+        } else if (file.exists()) {
+            snapshot.put(file, file.lastModified());
+        }
+    }
+}
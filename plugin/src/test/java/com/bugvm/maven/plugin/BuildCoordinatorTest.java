@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+
+import org.apache.maven.execution.MavenSession;
+import org.junit.Test;
+
+/**
+ * Tests that the mojos of the modules of a reactor build share one
+ * {@link BuildCoordinator}.
+ */
+public class BuildCoordinatorTest {
+
+    @Test
+    public void testModulesShareCoordinator() throws Exception {
+        MavenSession session = SessionCacheTest.newSession();
+        // Maven gives each module its own clone of the session
+        AbstractBugVMMojo a = mojo(session.clone());
+        AbstractBugVMMojo b = mojo(session.clone());
+        assertSame(a.getBuildCoordinator(), b.getBuildCoordinator());
+    }
+
+    @Test
+    public void testSessionsHaveOwnCoordinators() throws Exception {
+        AbstractBugVMMojo a = mojo(SessionCacheTest.newSession());
+        AbstractBugVMMojo b = mojo(SessionCacheTest.newSession());
+        assertNotSame(a.getBuildCoordinator(), b.getBuildCoordinator());
+    }
+
+    private static AbstractBugVMMojo mojo(MavenSession session) throws Exception {
+        AbstractBugVMMojo mojo = new WarmCacheMojo();
+        // Injected by Maven
+        Field field = AbstractBugVMMojo.class.getDeclaredField("session");
+        field.setAccessible(true);
+        field.set(mojo, session);
+        return mojo;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the size bookkeeping of {@link CacheIndex}.
+ */
+public class CacheIndexTest {
+
+    private static final String KEY = "ios/thumbv7/release/jar/foo.jar";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("cache");
+    }
+
+    @Test
+    public void testTouchMeasuresUnit() throws Exception {
+        write("Foo.class.o", 100);
+        CacheIndex index = new CacheIndex(root);
+        index.touch(KEY);
+        assertEquals(100, index.getTotalSize());
+
+        write("Bar.class.o", 50);
+        index.touch(KEY);
+        assertEquals(150, index.getTotalSize());
+    }
+
+    @Test
+    public void testMarkUsedKeepsSize() throws Exception {
+        write("Foo.class.o", 100);
+        CacheIndex index = new CacheIndex(root);
+        index.touch(KEY);
+        long lastUsed = index.getEntries().iterator().next().getLastUsed();
+
+        write("Bar.class.o", 50);
+        Thread.sleep(10);
+        index.markUsed(KEY);
+        CacheIndex.Entry entry = index.getEntries().iterator().next();
+        assertEquals(100, entry.getSize());
+        assertTrue(entry.getLastUsed() > lastUsed);
+    }
+
+    @Test
+    public void testMarkUsedMeasuresNewUnit() throws Exception {
+        write("Foo.class.o", 100);
+        CacheIndex index = new CacheIndex(root);
+        index.markUsed(KEY);
+        assertEquals(100, index.getTotalSize());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        write("Foo.class.o", 100);
+        CacheIndex index = new CacheIndex(root);
+        assertFalse(index.exists());
+        index.touch(KEY);
+        index.save();
+
+        index = new CacheIndex(root);
+        assertTrue(index.exists());
+        assertEquals(100, index.getTotalSize());
+        assertEquals("ios/thumbv7/release", index.getEntries().iterator().next().getTarget());
+    }
+
+    private void write(String name, int size) throws Exception {
+        FileUtils.writeByteArrayToFile(new File(root, KEY + "/" + name), new byte[size]);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Test;
+
+import com.bugvm.compiler.log.Logger;
+
+/**
+ * Tests {@link CompilePhase} together with {@link BuildCoordinator}.
+ */
+public class CompilePhaseTest {
+
+    private final Log log = new SystemStreamLog();
+    private final BuildCoordinator coordinator = new BuildCoordinator(4);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReleasesUnitsPerArchAndLockAfterLastArch() throws Exception {
+        CompilePhase phase = new CompilePhase();
+        Logger logger = phase.logger(new MavenLogger(log));
+        phase.begin(coordinator, Arrays.asList(units("ios/arm64/a"), units("ios/thumbv7/a")), 4, log);
+
+        Future<?> waiting = claimLater(units("ios/arm64/a"), 1);
+        assertBlocked(waiting);
+
+        logger.info("Compiled %d classes in %.2f seconds", 10, 1.0);
+        // The units of the first arch are free but all workers are still claimed
+        assertBlocked(waiting);
+
+        Future<?> compiling = beginLater();
+        assertBlocked(compiling);
+
+        logger.info("Compiled %d classes in %.2f seconds", 10, 1.0);
+        waiting.get(5, TimeUnit.SECONDS);
+        compiling.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testEndReleasesEverything() throws Exception {
+        CompilePhase phase = new CompilePhase();
+        phase.begin(coordinator, Collections.singletonList(units("ios/arm64/a")), 4, log);
+        Future<?> waiting = claimLater(units("ios/arm64/a"), 4);
+        assertBlocked(waiting);
+        phase.end();
+        phase.end();
+        waiting.get(5, TimeUnit.SECONDS);
+        beginLater().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testNothingPendingDoesNotWaitForClaims() throws Exception {
+        BuildCoordinator.Claim other = coordinator.claim(units("ios/arm64/rt"), 4, log);
+        CompilePhase phase = new CompilePhase();
+        phase.begin(coordinator, Collections.singletonList(Collections.<String>emptySet()), 0, log);
+        phase.end();
+        other.release();
+    }
+
+    private Future<?> claimLater(final Set<String> units, final int workers) {
+        return executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                coordinator.claim(units, workers, log).release();
+                return null;
+            }
+        });
+    }
+
+    private Future<?> beginLater() {
+        return executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                CompilePhase phase = new CompilePhase();
+                phase.begin(coordinator, Collections.singletonList(Collections.<String>emptySet()), 0, log);
+                phase.end();
+                return null;
+            }
+        });
+    }
+
+    private static void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected to block");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+    }
+
+    private static Set<String> units(String... units) {
+        return new TreeSet<>(Arrays.asList(units));
+    }
+}
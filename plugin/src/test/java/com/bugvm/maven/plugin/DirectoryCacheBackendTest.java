@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DirectoryCacheBackend}.
+ */
+public class DirectoryCacheBackendTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+    private DirectoryCacheBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("shared");
+        backend = new DirectoryCacheBackend(root);
+    }
+
+    @Test
+    public void testFetchMissing() throws Exception {
+        File dest = new File(tmp.getRoot(), "dest.zip");
+        assertFalse(backend.fetch("a/b.zip", dest));
+        assertFalse(dest.exists());
+    }
+
+    @Test
+    public void testStoreAndFetch() throws Exception {
+        File src = tmp.newFile("src.zip");
+        FileUtils.writeStringToFile(src, "objects", "UTF-8");
+        backend.store("a/b.zip", src);
+
+        File stored = new File(root, "a/b.zip");
+        assertEquals("objects", FileUtils.readFileToString(stored, "UTF-8"));
+        // Only the entry, no temp files
+        assertArrayEquals(new String[] {"b.zip"}, stored.getParentFile().list());
+
+        File dest = new File(tmp.getRoot(), "dest.zip");
+        assertTrue(backend.fetch("a/b.zip", dest));
+        assertEquals("objects", FileUtils.readFileToString(dest, "UTF-8"));
+    }
+
+    @Test
+    public void testStoreKeepsExistingEntry() throws Exception {
+        File first = tmp.newFile("first.zip");
+        FileUtils.writeStringToFile(first, "first", "UTF-8");
+        File second = tmp.newFile("second.zip");
+        FileUtils.writeStringToFile(second, "second", "UTF-8");
+        backend.store("a/b.zip", first);
+        backend.store("a/b.zip", second);
+        assertEquals("first", FileUtils.readFileToString(new File(root, "a/b.zip"), "UTF-8"));
+    }
+}
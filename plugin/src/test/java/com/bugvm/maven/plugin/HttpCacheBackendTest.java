@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link HttpCacheBackend} against a local HTTP server which stores
+ * {@code PUT} bodies in memory.
+ */
+public class HttpCacheBackendTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    private volatile int failWith;
+    private HttpServer server;
+    private HttpCacheBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cache/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                try {
+                    if (failWith != 0) {
+                        exchange.sendResponseHeaders(failWith, -1);
+                    } else if ("PUT".equals(exchange.getRequestMethod())) {
+                        InputStream in = exchange.getRequestBody();
+                        entries.put(path, IOUtils.toByteArray(in));
+                        exchange.sendResponseHeaders(201, -1);
+                    } else if ("GET".equals(exchange.getRequestMethod())) {
+                        byte[] data = entries.get(path);
+                        if (data == null) {
+                            exchange.sendResponseHeaders(404, -1);
+                        } else {
+                            exchange.sendResponseHeaders(200, data.length);
+                            OutputStream out = exchange.getResponseBody();
+                            out.write(data);
+                            out.close();
+                        }
+                    } else {
+                        exchange.sendResponseHeaders(405, -1);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        // No trailing slash, the backend adds it
+        backend = new HttpCacheBackend("http://127.0.0.1:" + server.getAddress().getPort() + "/cache");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFetchMissing() throws Exception {
+        File dest = new File(tmp.getRoot(), "dest.zip");
+        assertFalse(backend.fetch("1.0/ios/thumbv7/release/abc/def.zip", dest));
+        assertFalse(dest.exists());
+    }
+
+    @Test
+    public void testStoreAndFetch() throws Exception {
+        File src = tmp.newFile("src.zip");
+        FileUtils.writeStringToFile(src, "objects", "UTF-8");
+        backend.store("1.0/ios/thumbv7/release/abc/def.zip", src);
+        assertArrayEquals("objects".getBytes("UTF-8"), entries.get("/cache/1.0/ios/thumbv7/release/abc/def.zip"));
+
+        File dest = new File(tmp.getRoot(), "dest.zip");
+        assertTrue(backend.fetch("1.0/ios/thumbv7/release/abc/def.zip", dest));
+        assertEquals("objects", FileUtils.readFileToString(dest, "UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFetchFailure() throws Exception {
+        failWith = 500;
+        backend.fetch("key.zip", new File(tmp.getRoot(), "dest.zip"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testStoreFailure() throws Exception {
+        failWith = 403;
+        File src = tmp.newFile("src.zip");
+        FileUtils.writeStringToFile(src, "objects", "UTF-8");
+        backend.store("key.zip", src);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+/**
+ * Tests {@link SessionCache}.
+ */
+public class SessionCacheTest {
+
+    static MavenSession newSession() {
+        return new MavenSession(null, new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult(), Collections.<MavenProject>emptyList());
+    }
+
+    @Test
+    public void testClonedSessionSharesCache() throws Exception {
+        MavenSession session = newSession();
+        assertSame(SessionCache.get(session), SessionCache.get(session.clone()));
+    }
+
+    @Test
+    public void testOtherSessionHasOwnCache() throws Exception {
+        assertNotSame(SessionCache.get(newSession()), SessionCache.get(newSession()));
+    }
+
+    @Test
+    public void testValueIsLoadedOnce() throws Exception {
+        SessionCache cache = SessionCache.get(newSession());
+        assertEquals("a", cache.get("key", new SessionCache.Loader<String>() {
+            public String load() {
+                return "a";
+            }
+        }));
+        assertEquals("a", cache.get("key", new SessionCache.Loader<String>() {
+            public String load() {
+                return "b";
+            }
+        }));
+    }
+}
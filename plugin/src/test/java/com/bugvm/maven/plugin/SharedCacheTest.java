@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.plugin;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the hit, miss and upload bookkeeping of {@link SharedCache} and the
+ * modification times of fetched objects.
+ */
+public class SharedCacheTest {
+
+    private static final String KEY = "1.0/ios/thumbv7/release/jar/classpath.zip";
+    private static final long BUILT = 1400000000000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Log log = new SystemStreamLog();
+    private DirectoryCacheBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new DirectoryCacheBackend(tmp.newFolder("shared"));
+    }
+
+    @Test
+    public void testMissThenUpload() throws Exception {
+        SharedCache cache = new SharedCache(backend, true, log);
+        File dir = new File(tmp.getRoot(), "local/foo.jar");
+        cache.pull(new SharedCache.Unit(KEY, dir), 0);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        compile(dir);
+        cache.push();
+        assertEquals(1, cache.getUploads());
+        assertTrue(backend.fetch(KEY, new File(tmp.getRoot(), "check.zip")));
+
+        // Uploaded units aren't uploaded again
+        cache.push();
+        assertEquals(1, cache.getUploads());
+    }
+
+    @Test
+    public void testNothingUploadedIfNotCompiled() throws Exception {
+        SharedCache cache = new SharedCache(backend, true, log);
+        cache.pull(new SharedCache.Unit(KEY, new File(tmp.getRoot(), "local/foo.jar")), 0);
+        cache.push();
+        assertEquals(0, cache.getUploads());
+    }
+
+    @Test
+    public void testReadOnlyDoesNotUpload() throws Exception {
+        SharedCache cache = new SharedCache(backend, false, log);
+        File dir = new File(tmp.getRoot(), "local/foo.jar");
+        cache.pull(new SharedCache.Unit(KEY, dir), 0);
+        compile(dir);
+        cache.push();
+        assertEquals(0, cache.getUploads());
+        assertFalse(backend.fetch(KEY, new File(tmp.getRoot(), "check.zip")));
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        upload();
+
+        SharedCache cache = new SharedCache(backend, false, log);
+        File dir = new File(tmp.getRoot(), "other/foo.jar");
+        cache.pull(new SharedCache.Unit(KEY, dir), 0);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals("object", FileUtils.readFileToString(new File(dir, "com/example/Foo.class.o"), "UTF-8"));
+    }
+
+    @Test
+    public void testHitKeepsModificationTimes() throws Exception {
+        upload();
+
+        SharedCache cache = new SharedCache(backend, false, log);
+        File dir = new File(tmp.getRoot(), "other/foo.jar");
+        cache.pull(new SharedCache.Unit(KEY, dir), BUILT - 60000);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+
+        File o = new File(dir, "com/example/Foo.class.o");
+        assertEquals("object", FileUtils.readFileToString(o, "UTF-8"));
+        // Zip entries have a resolution of 2 seconds
+        assertEquals(BUILT, o.lastModified(), 2000);
+    }
+
+    @Test
+    public void testHitIsAtLeastAsNewAsInputs() throws Exception {
+        upload();
+
+        SharedCache cache = new SharedCache(backend, false, log);
+        File dir = new File(tmp.getRoot(), "other/foo.jar");
+        long newestInput = BUILT + 3600000;
+        cache.pull(new SharedCache.Unit(KEY, dir), newestInput);
+        assertEquals(newestInput, new File(dir, "com/example/Foo.class.o").lastModified(), 1000);
+    }
+
+    @Test
+    public void testFetchErrorIsCounted() throws Exception {
+        CacheBackend failing = new CacheBackend() {
+            public boolean fetch(String key, File dest) throws IOException {
+                throw new IOException("Connection refused");
+            }
+            public void store(String key, File src) throws IOException {
+                throw new IOException("Connection refused");
+            }
+        };
+        SharedCache cache = new SharedCache(failing, true, log);
+        cache.pull(new SharedCache.Unit(KEY, new File(tmp.getRoot(), "local/foo.jar")), 0);
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(1, cache.getErrors());
+    }
+
+    private void upload() throws IOException {
+        SharedCache cache = new SharedCache(backend, true, log);
+        File dir = new File(tmp.getRoot(), "local/foo.jar");
+        cache.pull(new SharedCache.Unit(KEY, dir), 0);
+        compile(dir);
+        cache.push();
+        assertEquals(1, cache.getUploads());
+    }
+
+    private static void compile(File dir) throws IOException {
+        File o = new File(dir, "com/example/Foo.class.o");
+        FileUtils.writeStringToFile(o, "object", "UTF-8");
+        o.setLastModified(BUILT);
+    }
+}
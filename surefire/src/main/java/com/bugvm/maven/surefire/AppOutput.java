@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 BugVM AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import com.bugvm.compiler.log.Logger;
+import com.bugvm.compiler.target.LaunchParameters;
+
+/**
+ * The stdout and stderr of the test apps launched by one runner. The apps
+ * write them to named pipes set on their {@link LaunchParameters}. A thread
+ * per pipe copies everything on to the console and keeps the last
+ * {@code capacity} bytes of both in a ring buffer, which is what
+ * {@link #tail()} returns when an app is killed. The pipes stay open across
+ * relaunches. If the pipes can't be created the apps write to the console
+ * as usual and nothing is kept.
+ */
+public class AppOutput implements Closeable {
+    private final byte[] buffer;
+    private long written;
+    private File dir;
+    private RandomAccessFile[] pipes;
+    private volatile boolean closed;
+
+    public AppOutput(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Sets the pipes on {@code launchParameters}, creating them the first
+     * time round.
+     */
+    public synchronized void attach(LaunchParameters launchParameters, Logger logger) {
+        if (pipes == null && dir == null) {
+            try {
+                dir = Files.createTempDirectory("bugvm-test").toFile();
+                File stdout = mkfifo(new File(dir, "stdout"));
+                File stderr = mkfifo(new File(dir, "stderr"));
+                // Opened for reading and writing so opening doesn't block
+                // and relaunched apps keep writing to the same pipes
+                pipes = new RandomAccessFile[] {
+                        new RandomAccessFile(stdout, "rw"), new RandomAccessFile(stderr, "rw")};
+                copy(pipes[0], System.out);
+                copy(pipes[1], System.err);
+            } catch (IOException e) {
+                logger.warn("Failed to capture the output of the test app: %s", e.getMessage());
+                pipes = null;
+                return;
+            }
+        }
+        if (pipes != null) {
+            launchParameters.setStdoutFifo(new File(dir, "stdout"));
+            launchParameters.setStderrFifo(new File(dir, "stderr"));
+        }
+    }
+
+    /**
+     * Returns the last output kept in the buffer.
+     */
+    public synchronized String tail() {
+        int n = (int) Math.min(written, buffer.length);
+        int start = (int) ((written - n) % buffer.length);
+        byte[] bytes = new byte[n];
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, bytes, 0, first);
+        System.arraycopy(buffer, 0, bytes, first, n - first);
+        return new String(bytes, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Empties the buffer, e.g. before the app is relaunched.
+     */
+    public synchronized void clear() {
+        written = 0;
+    }
+
+    private synchronized void append(byte[] b, int off, int len) {
+        if (len > buffer.length) {
+            off += len - buffer.length;
+            written += len - buffer.length;
+            len = buffer.length;
+        }
+        int start = (int) (written % buffer.length);
+        int first = Math.min(len, buffer.length - start);
+        System.arraycopy(b, off, buffer, start, first);
+        System.arraycopy(b, off + first, buffer, 0, len - first);
+        written += len;
+    }
+
+    private void copy(final RandomAccessFile pipe, final PrintStream console) {
+        Thread thread = new Thread("bugvm-test-output") {
+            public void run() {
+                byte[] b = new byte[4096];
+                try {
+                    int n;
+                    while ((n = pipe.read(b)) != -1) {
+                        // close() writes a 0 after whatever is still in
+                        // the pipe
+                        boolean last = closed && n > 0 && b[n - 1] == 0;
+                        if (last) {
+                            n--;
+                        }
+                        console.write(b, 0, n);
+                        console.flush();
+                        append(b, 0, n);
+                        if (last) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                } finally {
+                    closeQuietly(pipe);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops copying and deletes the pipes.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pipes != null) {
+            for (RandomAccessFile pipe : pipes) {
+                try {
+                    // Wakes up the thread blocked reading the pipe
+                    pipe.write(0);
+                } catch (IOException e) {
+                }
+            }
+        }
+        if (dir != null) {
+            new File(dir, "stdout").delete();
+            new File(dir, "stderr").delete();
+            dir.delete();
+        }
+    }
+
+    private static File mkfifo(File file) throws IOException {
+        Process process = new ProcessBuilder("mkfifo", file.getAbsolutePath()).redirectErrorStream(true).start();
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("mkfifo " + file + " failed with exit code " + process.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating " + file, e);
+        }
+        return file;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+        }
+    }
+}
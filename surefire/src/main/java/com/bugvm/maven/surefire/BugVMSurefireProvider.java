@@ -21,12 +21,25 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.maven.surefire.common.junit4.JUnit4RunListener;
@@ -66,6 +79,9 @@ import com.bugvm.compiler.target.ios.ProvisioningProfile;
 import com.bugvm.compiler.target.ios.SigningIdentity;
 import com.bugvm.compiler.target.ios.IOSSimulatorLaunchParameters;
 import com.bugvm.junit.client.TestClient;
+import com.bugvm.maven.common.BuildFingerprint;
+import com.bugvm.maven.common.MemoryBudget;
+import com.bugvm.maven.common.SigningDiscovery;
 import com.bugvm.maven.resolver.BugVMResolver;
 
 public class BugVMSurefireProvider extends AbstractProvider {
@@ -83,6 +99,20 @@ public class BugVMSurefireProvider extends AbstractProvider {
     private final static String PROP_KEYCHAIN_PASSWORD = "bugvm.test.keychainPassword";
     private final static String PROP_KEYCHAIN_PASSWORD_FILE = "bugvm.test.keychainPasswordFile";
     private final static String PROP_RUN_ARGS = "bugvm.test.runArgs";
+    private final static String PROP_FORK_COUNT = "bugvm.test.forkCount";
+    private final static String PROP_BATCH_SIZE = "bugvm.test.batchSize";
+    private final static String PROP_DURATION_ORDER = "bugvm.test.durationOrder";
+    private final static String PROP_FAIL_FAST = "bugvm.test.failFast";
+    private final static String PROP_FAIL_FAST_THRESHOLD = "bugvm.test.failFastThreshold";
+    private final static String PROP_TIMEOUT = "bugvm.test.timeout";
+    private final static String PROP_GLOBAL_TIMEOUT = "bugvm.test.globalTimeout";
+    private final static String PROP_RELAUNCH_ON_TIMEOUT = "bugvm.test.relaunchOnTimeout";
+    private final static String PROP_THREADS = "bugvm.test.threads";
+    private final static String PROP_MEMORY_BUDGET = "bugvm.test.memoryBudget";
+
+    private final static String DIST_COORDS = "com.bugvm:bugvm-dist:tar.gz:nocompiler:";
+
+    private final static int MAX_CAPTURED_OUTPUT = 64 * 1024;
 
     private final ClassLoader testClassLoader;
     private final List<org.junit.runner.notification.RunListener> customRunListeners;
@@ -92,6 +122,16 @@ public class BugVMSurefireProvider extends AbstractProvider {
     private final RunOrderCalculator runOrderCalculator;
     private final ScanResult scanResult;
     private TestsToRun testsToRun;
+    private ProviderLogger logger;
+    private TestDurations durations;
+    private ClasspathSnapshot classpath;
+    private ResolutionCache resolutionCache;
+    private BugVMResolver resolver;
+    private int compilerThreads;
+    private final List<Runner> runners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile boolean stopped;
+    private volatile String stopReason;
 
     public BugVMSurefireProvider(ProviderParameters booterParameters) {
         providerParameters = booterParameters;
@@ -132,33 +172,221 @@ public class BugVMSurefireProvider extends AbstractProvider {
         ConsoleOutputCapture.startCapture((ConsoleOutputReceiver) reporter);
         final JUnit4RunListener jUnit4TestSetReporter = new JUnit4RunListener(reporter);
         Result result = new Result();
-        final RunNotifier runNotifier = getRunNotifier(jUnit4TestSetReporter, result, customRunListeners);
 
-        TestClient testClient = new TestClient();
-        testClient.setRunListener(new org.junit.runner.notification.RunListener() {
-            public void testRunStarted(Description description) throws Exception {
-                runNotifier.fireTestRunStarted(description);
+        int forkCount = Integer.getInteger(PROP_FORK_COUNT, 1);
+        if (forkCount > 1 && isIOS()) {
+            getLogger().info("Ignoring %s=%d, only one iOS test runner can be launched",
+                    PROP_FORK_COUNT, forkCount);
+            forkCount = 1;
+        }
+        List<org.junit.runner.notification.RunListener> listeners = customRunListeners;
+        if (forkCount > 1) {
+            // Shared by the notifiers of all runners
+            listeners = new ArrayList<>();
+            for (org.junit.runner.notification.RunListener listener : customRunListeners) {
+                listeners.add(new SynchronizedRunListener(listener, customRunListeners));
+            }
+        }
+        final RunNotifier runNotifier = getRunNotifier(jUnit4TestSetReporter, result, listeners);
+
+        Thread watchdog = null;
+        try {
+            TestClient testClient = createTestClient();
+            Config config = testClient.configure(createConfig(), isIOS()).build();
+            config.getLogger().info("Building BugVM tests for: %s (%s)", config.getOs(), config.getArch());
+            config.getLogger().info("This could take a while, especially the first time round");
+            AppCompiler appCompiler = new AppCompiler(config);
+            BuildFingerprint fingerprint = fingerprint(config);
+            File fingerprintFile = new File(config.getTmpDir(), "bugvm-test.fingerprint");
+            if (fingerprint.matches(fingerprintFile)
+                    && new File(config.getTmpDir(), config.getExecutableName()).exists()) {
+                config.getLogger().info("Test binary is up to date, skipping build");
+            } else {
+                fingerprintFile.delete();
+                appCompiler.build();
+                fingerprint.write(fingerprintFile);
             }
-            public void testRunFinished(Result result) throws Exception {
-                runNotifier.fireTestRunFinished(result);
+            runners.add(new Runner(testClient, appCompiler, reporter, runNotifier));
+
+            // Additional runners launch the binary built above
+            for (int i = 1; i < forkCount; i++) {
+                TestClient client = createTestClient();
+                Config.Builder builder = createConfig();
+                RunListener runnerReporter = reporterFactory.createReporter();
+                runners.add(new Runner(client, new AppCompiler(client.configure(builder, isIOS()).build()),
+                        runnerReporter, getRunNotifier(new JUnit4RunListener(runnerReporter), result, listeners)));
             }
-            public void testStarted(Description description) throws Exception {
-                runNotifier.fireTestStarted(description);
+
+            runNotifier.fireTestRunStarted(null);
+            Queue<Class<?>> queue = new ConcurrentLinkedQueue<>();
+            boolean durationOrder = System.getProperty(PROP_DURATION_ORDER) != null
+                    ? Boolean.getBoolean(PROP_DURATION_ORDER) : runners.size() > 1;
+            List<Class<?>> classes = new ArrayList<>();
+            for (Class<?> clazz : testsToRun) {
+                classes.add(clazz);
             }
-            public void testFinished(Description description) throws Exception {
-                runNotifier.fireTestFinished(description);
+            queue.addAll(durationOrder ? getDurations().slowestFirst(classes) : classes);
+            watchdog = startWatchdog();
+            if (runners.size() == 1) {
+                runners.get(0).run(queue);
+            } else {
+                config.getLogger().info("Running tests using %d runners", runners.size());
+                ExecutorService executor = Executors.newFixedThreadPool(runners.size());
+                try {
+                    List<Future<Void>> futures = new ArrayList<>();
+                    for (Runner runner : runners) {
+                        futures.add(executor.submit(runner.asCallable(queue)));
+                    }
+                    for (Future<Void> future : futures) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException e) {
+                            throw e.getCause();
+                        }
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
             }
-            public void testFailure(Failure failure) throws Exception {
-                runNotifier.fireTestFailure(failure);
+            // Classes which were never run since the run was stopped or all
+            // runners timed out
+            String reason = stopReason != null ? stopReason : "no test runner was left after timeouts";
+            Class<?> clazz;
+            while ((clazz = queue.poll()) != null) {
+                reportSkipped(reporter, clazz, reason);
             }
-            public void testAssumptionFailure(Failure failure) {
-                runNotifier.fireTestAssumptionFailed(failure);
+            runNotifier.fireTestRunFinished(result);
+            JUnit4RunListener.rethrowAnyTestMechanismFailures(result);
+        } catch (Throwable t) {
+            throw new RuntimeException("BugVM test run failed", t);
+        } finally {
+            if (watchdog != null) {
+                watchdog.interrupt();
             }
-            public void testIgnored(Description description) throws Exception {
-                runNotifier.fireTestIgnored(description);
+            for (Runner runner : runners) {
+                runner.close();
             }
-        });
+            try {
+                getDurations().save();
+            } catch (IOException e) {
+                getLogger().warn("Failed to save test durations: %s", e.getMessage());
+            }
+            getLogger().flush();
+        }
+
+        return reporterFactory.close();
+    }
+
+    /**
+     * Counts a failed test or test class. With {@code bugvm.test.failFast}
+     * enabled the run is stopped once {@code bugvm.test.failFastThreshold}
+     * failures have been seen: no more classes are dispatched and all runners
+     * are killed. Classes which haven't been started are reported as skipped.
+     */
+    private void countFailure() {
+        if (!Boolean.getBoolean(PROP_FAIL_FAST)) {
+            return;
+        }
+        int threshold = Math.max(1, Integer.getInteger(PROP_FAIL_FAST_THRESHOLD, 1));
+        if (failures.incrementAndGet() >= threshold && !stopped) {
+            stopReason = "the test run was stopped after " + threshold + " failure(s)";
+            stopped = true;
+            getLogger().warn("Stopping test run after %d failure(s) (%s=true)", threshold, PROP_FAIL_FAST);
+            for (Runner runner : runners) {
+                runner.destroy();
+            }
+        }
+    }
+
+    private void reportSkipped(RunListener reporter, Class<?> clazz, String reason) {
+        ReportEntry testSet = new SimpleReportEntry(BugVMSurefireProvider.class.getName(), clazz.getName());
+        reporter.testSetStarting(testSet);
+        reporter.testSkipped(SimpleReportEntry.ignored(clazz.getName(), clazz.getName(),
+                "Skipped since " + reason));
+        reporter.testSetCompleted(testSet);
+    }
+
+    /**
+     * Starts a thread which kills runners stuck on a test class for more than
+     * {@code bugvm.test.timeout} seconds and stops the whole run after
+     * {@code bugvm.test.globalTimeout} seconds. Returns {@code null} if
+     * neither is set.
+     */
+    private Thread startWatchdog() {
+        final long timeout = Long.getLong(PROP_TIMEOUT, 0) * 1000;
+        final long globalTimeout = Long.getLong(PROP_GLOBAL_TIMEOUT, 0) * 1000;
+        if (timeout <= 0 && globalTimeout <= 0) {
+            return null;
+        }
+        final long start = System.currentTimeMillis();
+        Thread watchdog = new Thread("BugVM test watchdog") {
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        Thread.sleep(1000);
+                        long now = System.currentTimeMillis();
+                        if (globalTimeout > 0 && now - start > globalTimeout) {
+                            String reason = String.format("the test run timed out after %d seconds",
+                                    globalTimeout / 1000);
+                            getLogger().error("Stopping test run: %s", reason);
+                            stopReason = reason;
+                            stopped = true;
+                            for (Runner runner : runners) {
+                                runner.timeout(reason);
+                            }
+                            return;
+                        }
+                        if (timeout > 0) {
+                            for (Runner runner : runners) {
+                                runner.checkTimeout(now, timeout);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        watchdog.setDaemon(true);
+        watchdog.start();
+        return watchdog;
+    }
+
+    /**
+     * Fingerprints everything which goes into the test binary: the classpath,
+     * the force linked test classes, the config files and the os and arch.
+     */
+    private BuildFingerprint fingerprint(Config config) throws IOException {
+        BuildFingerprint fingerprint = new BuildFingerprint()
+                .add("version", Version.getVersion())
+                .add("os", config.getOs())
+                .add("arch", config.getArch())
+                .add("targetType", config.getTargetType())
+                .add("debug", config.isDebug())
+                .add("forceLinkClasses", config.getForceLinkClasses());
+        for (String name : new String[] {PROP_PROPERTIES_FILE, PROP_CONFIG_FILE,
+                PROP_IOS_SIGNING_IDENTITY, PROP_IOS_PROVISIONING_PROFILE, PROP_IOS_SKIP_SIGNING,
+                PROP_CACHE_DIR}) {
+            fingerprint.add(name, System.getProperty(name));
+        }
+        File basedir = new File(System.getProperty("basedir"));
+        for (String name : new String[] {"bugvm.test.properties", "bugvm.properties",
+                "bugvm.test.xml", "bugvm.xml"}) {
+            fingerprint.addContents(new File(basedir, name));
+        }
+        if (System.getProperty(PROP_PROPERTIES_FILE) != null) {
+            fingerprint.addContents(new File(System.getProperty(PROP_PROPERTIES_FILE)));
+        }
+        if (System.getProperty(PROP_CONFIG_FILE) != null) {
+            fingerprint.addContents(new File(System.getProperty(PROP_CONFIG_FILE)));
+        }
+        for (File f : config.getClasspath()) {
+            fingerprint.addClasspathEntry(f);
+        }
+        return fingerprint;
+    }
 
+    private TestClient createTestClient() {
+        TestClient testClient = new TestClient();
         String runArgs = System.getProperty(PROP_RUN_ARGS, "");
         if (!runArgs.isEmpty()) {
             testClient.setRunArgs(
@@ -166,46 +394,315 @@ public class BugVMSurefireProvider extends AbstractProvider {
                             Arrays.asList(
                                     CommandLine.parse("cmd " + runArgs).getArguments())));
         }
+        return testClient;
+    }
 
-        Process process = null;
-        try {
-            Config config = testClient.configure(createConfig(), isIOS()).build();
-            config.getLogger().info("Building BugVM tests for: %s (%s)", config.getOs(), config.getArch());
-            config.getLogger().info("This could take a while, especially the first time round");
-            AppCompiler appCompiler = new AppCompiler(config);
-            appCompiler.build();
-
-            LaunchParameters launchParameters = config.getTarget().createLaunchParameters();
-            if (Boolean.getBoolean(PROP_SERVER_DEBUG)) {
-                launchParameters.getArguments().add("-rvm:Dbugvm.debug=true");
-            }
-            if (System.getProperty(PROP_IOS_SIMULATOR_NAME) != null && launchParameters instanceof IOSSimulatorLaunchParameters) {
-                DeviceType type = DeviceType.getDeviceType(System.getProperty(PROP_IOS_SIMULATOR_NAME));
-                ((IOSSimulatorLaunchParameters)launchParameters).setDeviceType(type);
-            } else if(launchParameters instanceof IOSSimulatorLaunchParameters) {
-                if(config.getArch() == Arch.x86_64) {
-                    ((IOSSimulatorLaunchParameters)launchParameters).setDeviceType(DeviceType.getBestDeviceType(config.getArch(), null, null, null));
+    private LaunchParameters createLaunchParameters(Config config) throws IOException {
+        LaunchParameters launchParameters = config.getTarget().createLaunchParameters();
+        if (Boolean.getBoolean(PROP_SERVER_DEBUG)) {
+            launchParameters.getArguments().add("-rvm:Dbugvm.debug=true");
+        }
+        if (System.getProperty(PROP_IOS_SIMULATOR_NAME) != null && launchParameters instanceof IOSSimulatorLaunchParameters) {
+            DeviceType type = DeviceType.getDeviceType(System.getProperty(PROP_IOS_SIMULATOR_NAME));
+            ((IOSSimulatorLaunchParameters)launchParameters).setDeviceType(type);
+        } else if(launchParameters instanceof IOSSimulatorLaunchParameters) {
+            if(config.getArch() == Arch.x86_64) {
+                ((IOSSimulatorLaunchParameters)launchParameters).setDeviceType(DeviceType.getBestDeviceType(config.getArch(), null, null, null));
+            }
+        }
+        return launchParameters;
+    }
+
+    /**
+     * A launched test app and the {@link TestClient} talking to it. Each
+     * runner reports the test events of its app to its own reporter and
+     * notifier. Test classes are taken from a queue shared by all runners,
+     * in batches of {@code bugvm.test.batchSize} classes (see
+     * {@link #getBatchLimit}). All classes in a batch are sent to the app in
+     * one request and results are reported as they arrive. The surefire test
+     * sets are started and completed as the results move from one class to
+     * the next. A runner killed by the watchdog reports its current class as
+     * an error, returns the rest of its batch to the queue and is relaunched
+     * if {@code bugvm.test.relaunchOnTimeout} is set.
+     */
+    private class Runner {
+        TestClient testClient;
+        AppCompiler appCompiler;
+        final RunListener reporter;
+        final RunNotifier runNotifier;
+        final int batchSize;
+        final AppOutput output = new AppOutput(MAX_CAPTURED_OUTPUT);
+        volatile Process process;
+
+        // Classes of the current batch which haven't been started yet
+        final LinkedList<Class<?>> pending = new LinkedList<>();
+        ReportEntry current;
+        long currentStart;
+        volatile Description lastStarted;
+        boolean timedOut;
+        String timeoutReason;
+        String timeoutOutput;
+
+        Runner(TestClient testClient, AppCompiler appCompiler, RunListener reporter, final RunNotifier runNotifier) {
+            this.testClient = testClient;
+            this.appCompiler = appCompiler;
+            this.reporter = reporter;
+            this.runNotifier = runNotifier;
+            this.batchSize = Integer.getInteger(PROP_BATCH_SIZE, 1);
+            connect(testClient);
+        }
+
+        /**
+         * Forwards the test events of {@code client} to this runner's
+         * notifier. Run started and finished events of the test apps are
+         * dropped, {@link #invoke} fires them once for the whole run on the
+         * main notifier.
+         */
+        private void connect(TestClient client) {
+            testClient = client;
+            testClient.setRunListener(new org.junit.runner.notification.RunListener() {
+                public void testStarted(Description description) throws Exception {
+                    lastStarted = description;
+                    startTestSet(description);
+                    runNotifier.fireTestStarted(description);
+                }
+                public void testFinished(Description description) throws Exception {
+                    runNotifier.fireTestFinished(description);
+                }
+                public void testFailure(Failure failure) throws Exception {
+                    startTestSet(failure.getDescription());
+                    runNotifier.fireTestFailure(failure);
+                    countFailure();
+                }
+                public void testAssumptionFailure(Failure failure) {
+                    startTestSet(failure.getDescription());
+                    runNotifier.fireTestAssumptionFailed(failure);
                 }
+                public void testIgnored(Description description) throws Exception {
+                    startTestSet(description);
+                    runNotifier.fireTestIgnored(description);
+                }
+            });
+        }
+
+        void run(Queue<Class<?>> queue) throws Throwable {
+            launch();
+            if (stopped) {
+                // Stopped while launching
+                process.destroy();
+                return;
             }
+            List<Class<?>> batch = new ArrayList<>();
+            int limit = 0;
+            while (true) {
+                if (batch.isEmpty()) {
+                    limit = getBatchLimit(queue);
+                }
+                Class<?> clazz = stopped ? null : queue.poll();
+                if (clazz != null) {
+                    batch.add(clazz);
+                    if (limit <= 0 || batch.size() < limit) {
+                        continue;
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (stopped) {
+                    queue.addAll(batch);
+                    break;
+                }
+                executeTestSets(batch, queue);
+                batch.clear();
+                if (timedOut && !relaunch()) {
+                    return;
+                }
+            }
+            if (!stopped) {
+                testClient.terminate();
+            }
+            process.waitFor();
+        }
+
+        private void launch() throws Throwable {
+            LaunchParameters launchParameters = createLaunchParameters(appCompiler.getConfig());
+            output.attach(launchParameters, getLogger());
             process = appCompiler.launchAsync(launchParameters);
+        }
 
-            runNotifier.fireTestRunStarted(null);
-            for (Class<?> clazz : testsToRun) {
-                executeTestSet(testClient, clazz, reporter, runNotifier);
+        /**
+         * Returns the maximum number of classes in the next batch, 0 if there
+         * is no limit. With {@code bugvm.test.batchSize=0} and more than one
+         * runner a batch gets an equal share of the classes left in the queue
+         * rather than all of them, so the other runners don't sit idle. The
+         * batches get smaller towards the end of the run which keeps the
+         * runners balanced.
+         */
+        private int getBatchLimit(Queue<Class<?>> queue) {
+            if (batchSize > 0 || runners.size() == 1) {
+                return batchSize;
             }
-            testClient.terminate();
+            return Math.max(1, (queue.size() + runners.size() - 1) / runners.size());
+        }
+
+        /**
+         * Launches a new test app after a timeout. Returns {@code false} if
+         * relaunching is disabled or the run has been stopped.
+         */
+        private boolean relaunch() throws Throwable {
             process.waitFor();
-            runNotifier.fireTestRunFinished(result);
-            JUnit4RunListener.rethrowAnyTestMechanismFailures(result);
-        } catch (Throwable t) {
-            throw new RuntimeException("BugVM test run failed", t);
-        } finally {
+            if (stopped || !Boolean.getBoolean(PROP_RELAUNCH_ON_TIMEOUT)) {
+                return false;
+            }
+            getLogger().info("Relaunching test runner after timeout");
+            connect(createTestClient());
+            appCompiler = new AppCompiler(testClient.configure(createConfig(), isIOS()).build());
+            synchronized (this) {
+                timedOut = false;
+                timeoutReason = null;
+                timeoutOutput = null;
+            }
+            output.clear();
+            launch();
+            return true;
+        }
+
+        private void executeTestSets(List<Class<?>> classes, Queue<Class<?>> queue) {
+            List<String> patterns = new ArrayList<>();
+            for (Class<?> clazz : classes) {
+                patterns.addAll(Arrays.asList(testToRunToClassPatterns(clazz)));
+            }
+            synchronized (this) {
+                pending.addAll(classes);
+                startNextTestSet();
+            }
+
+            try {
+                testClient.runTests(patterns.toArray(new String[patterns.size()])).flush();
+            } catch (Throwable e) {
+                if (!stopped && !timedOut) {
+                    synchronized (this) {
+                        reporter.testError(SimpleReportEntry.withException(current.getSourceName(), current.getName(),
+                                new PojoStackTraceWriter(current.getSourceName(),
+                                        current.getName(), e)));
+                    }
+                    countFailure();
+                }
+            } finally {
+                synchronized (this) {
+                    if (timedOut && current != null) {
+                        reportTimeout();
+                    }
+                    // Classes without any results still get a test set
+                    while (current != null) {
+                        startNextTestSet();
+                    }
+                    // Left for other or relaunched runners
+                    queue.addAll(pending);
+                    pending.clear();
+                }
+            }
+        }
+
+        /**
+         * Makes sure the test set of the class of {@code description} has been
+         * started, completing the ones of the classes before it in the batch.
+         */
+        private synchronized void startTestSet(Description description) {
+            String className = description.getClassName();
+            if (current == null || current.getName().equals(className)) {
+                return;
+            }
+            for (Class<?> clazz : pending) {
+                if (clazz.getName().equals(className)) {
+                    while (!current.getName().equals(className)) {
+                        startNextTestSet();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void startNextTestSet() {
+            if (current != null) {
+                reporter.testSetCompleted(current);
+                getDurations().record(current.getName(), System.currentTimeMillis() - currentStart);
+                current = null;
+            }
+            if (!pending.isEmpty() && !stopped && !timedOut) {
+                Class<?> clazz = pending.removeFirst();
+                current = new SimpleReportEntry(BugVMSurefireProvider.class.getName(), clazz.getName());
+                currentStart = System.currentTimeMillis();
+                reporter.testSetStarting(current);
+            }
+        }
+
+        synchronized void checkTimeout(long now, long timeout) {
+            if (current != null && !timedOut && now - currentStart > timeout) {
+                String reason = String.format("test class %s timed out after %d seconds",
+                        current.getName(), (now - currentStart) / 1000);
+                getLogger().error("Killing test runner: %s", reason);
+                timeout(reason);
+            }
+        }
+
+        /**
+         * Kills the test app, keeping the last output it has written.
+         */
+        synchronized void timeout(String reason) {
+            if (timedOut) {
+                return;
+            }
+            timedOut = true;
+            timeoutReason = reason;
+            timeoutOutput = output.tail();
+            destroy();
+        }
+
+        private void reportTimeout() {
+            long elapsed = System.currentTimeMillis() - currentStart;
+            StringBuilder message = new StringBuilder(Character.toUpperCase(timeoutReason.charAt(0))
+                    + timeoutReason.substring(1));
+            message.append(" (ran for ").append(elapsed).append(" ms");
+            Description last = lastStarted;
+            if (last != null && current.getName().equals(last.getClassName())) {
+                message.append(", last test started: ").append(last.getDisplayName());
+            }
+            message.append(")");
+            if (timeoutOutput != null && !timeoutOutput.isEmpty()) {
+                message.append("\nOutput of the test app:\n").append(timeoutOutput);
+            }
+            reporter.testError(new SimpleReportEntry(current.getSourceName(), current.getName(),
+                    new PojoStackTraceWriter(current.getSourceName(), current.getName(),
+                            new TimeoutException(message.toString())), (int) elapsed));
+            countFailure();
+        }
+
+        Callable<Void> asCallable(final Queue<Class<?>> queue) {
+            return new Callable<Void>() {
+                public Void call() throws Exception {
+                    try {
+                        run(queue);
+                    } catch (Exception | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new Exception(t);
+                    }
+                    return null;
+                }
+            };
+        }
+
+        void destroy() {
             if (process != null) {
                 process.destroy();
             }
         }
 
-        return reporterFactory.close();
+        void close() {
+            destroy();
+            output.close();
+        }
     }
 
     private boolean isIOS() {
@@ -236,60 +733,76 @@ public class BugVMSurefireProvider extends AbstractProvider {
         return result.toArray(new String[result.size()]);
     }
 
-    private void executeTestSet(TestClient testClient, Class<?> clazz, RunListener reporter, RunNotifier listeners)
-            throws ReporterException, TestSetFailedException {
+    /**
+     * Returns the number of compiler threads: {@code bugvm.test.threads} or
+     * the number of available processors, reduced to what
+     * {@code bugvm.test.memoryBudget} (in MB, defaults to and is capped at
+     * the max heap size) can accommodate.
+     */
+    private synchronized int getCompilerThreads() {
+        if (compilerThreads == 0) {
+            int threads = Integer.getInteger(PROP_THREADS, 0);
+            long memoryBudget = Long.getLong(PROP_MEMORY_BUDGET, 0);
+            int cores = Runtime.getRuntime().availableProcessors();
+            long budget = new MemoryBudget(memoryBudget).getInProcess();
+            int affordable = MemoryBudget.getAffordableThreads(budget);
+            int n = threads > 0 ? threads : cores;
+            if (n > affordable) {
+                if (threads > 0) {
+                    getLogger().warn("Reducing compiler threads from %d to %d to stay within the memory budget of %d MB",
+                            threads, affordable, budget / MemoryBudget.MB);
+                }
+                n = affordable;
+            }
+            compilerThreads = n;
+            getLogger().info("Using %d compiler threads (%s, %d cores) and a memory budget of %d MB",
+                    n, threads > 0 ? "configured" : "auto", cores, budget / MemoryBudget.MB);
+        }
+        return compilerThreads;
+    }
 
-        final ReportEntry report = new SimpleReportEntry(this.getClass().getName(), clazz.getName());
-        reporter.testSetStarting(report);
+    private synchronized TestDurations getDurations() {
+        if (durations == null) {
+            durations = new TestDurations(new File(System.getProperty("basedir"),
+                    "target/bugvm-test-durations.properties"));
+        }
+        return durations;
+    }
 
-        try {
-            testClient.runTests(testToRunToClassPatterns(clazz)).flush();
-        } catch (Throwable e) {
-            reporter.testError(SimpleReportEntry.withException(report.getSourceName(), report.getName(),
-                    new PojoStackTraceWriter(report.getSourceName(),
-                            report.getName(), e)));
-        } finally {
-            reporter.testSetCompleted(report);
+    private ProviderLogger getLogger() {
+        if (logger == null) {
+            logger = new ProviderLogger(providerParameters.getConsoleLogger(),
+                    Boolean.getBoolean(PROP_LOG_DEBUG));
         }
+        return logger;
     }
 
     private Config.Builder createConfig() throws IOException {
         Config.Builder configBuilder = new Config.Builder();
 
-        final Logger logger = new Logger() {
-            public void debug(String format, Object... args) {
-                if (Boolean.getBoolean(PROP_LOG_DEBUG)) {
-                    providerParameters.getConsoleLogger().info("[DEBUG] " + String.format(format, args) + "\n");
-                }
-            }
-            public void info(String format, Object... args) {
-                providerParameters.getConsoleLogger().info("[INFO] " + String.format(format, args) + "\n");
-            }
-            public void warn(String format, Object... args) {
-                providerParameters.getConsoleLogger().info("[WARNING] " + String.format(format, args) + "\n");
-            }
-            public void error(String format, Object... args) {
-                providerParameters.getConsoleLogger().info("[ERROR] " + String.format(format, args) + "\n");
-            }
-        };
+        final Logger logger = getLogger();
         configBuilder.logger(logger);
 
-        BugVMResolver roboVMResolver = new BugVMResolver();
-        roboVMResolver.setLogger(new com.bugvm.maven.resolver.Logger() {
-            public void info(String logLine) {
-                logger.info(logLine);
+        // Start looking up signing identities and profiles early, they are
+        // needed further down
+        SigningDiscovery signingDiscovery = new SigningDiscovery();
+        Future<List<SigningIdentity>> signingIdentities = null;
+        Future<List<ProvisioningProfile>> provisioningProfiles = null;
+        if (!Boolean.getBoolean(PROP_IOS_SKIP_SIGNING)) {
+            if (System.getProperty(PROP_IOS_SIGNING_IDENTITY) != null) {
+                signingIdentities = signingDiscovery.signingIdentities();
             }
-            public void debug(String logLine) {
-                logger.debug(logLine);
+            if (System.getProperty(PROP_IOS_PROVISIONING_PROFILE) != null) {
+                provisioningProfiles = signingDiscovery.provisioningProfiles();
             }
-        });
+        }
 
         Home home = null;
         try {
             home = Home.find();
         } catch (Throwable t) {}
         if (home == null || !home.isDev()) {
-            home = new Home(roboVMResolver.resolveAndUnpackBugVMDistArtifact(Version.getVersion()));
+            home = new Home(resolve(DIST_COORDS + Version.getVersion(), true));
         }
         configBuilder.home(home);
         if (home.isDev()) {
@@ -336,13 +849,13 @@ public class BugVMSurefireProvider extends AbstractProvider {
                 String iosSignIdentity = System.getProperty(PROP_IOS_SIGNING_IDENTITY);
                 logger.debug("Using explicit iOS Signing identity: " + iosSignIdentity);
                 configBuilder.iosSignIdentity(SigningIdentity.find(
-                        SigningIdentity.list(), iosSignIdentity));
+                        SigningDiscovery.get(signingIdentities), iosSignIdentity));
             }
             if (System.getProperty(PROP_IOS_PROVISIONING_PROFILE) != null) {
                 String iosProvisioningProfile = System.getProperty(PROP_IOS_PROVISIONING_PROFILE);
                 logger.debug("Using explicit iOS provisioning profile: " + iosProvisioningProfile);
                 configBuilder.iosProvisioningProfile(ProvisioningProfile.find(
-                        ProvisioningProfile.list(), iosProvisioningProfile));
+                        SigningDiscovery.get(provisioningProfiles), iosProvisioningProfile));
             }
 
             // if (System.getProperty(PROP_KEYCHAIN_PASSWORD) != null) {
@@ -361,32 +874,53 @@ public class BugVMSurefireProvider extends AbstractProvider {
         // Ignore any classpath entries in the loaded bugvm.xml file.
         configBuilder.clearClasspathEntries();
 
-        configBuilder.addClasspathEntry(roboVMResolver.resolveArtifact("com.bugvm:bugvm-junit-server:" + Version.getVersion()).asFile());
+        for (File f : getClasspath().getEntries()) {
+            configBuilder.addClasspathEntry(f);
+        }
+
+        List<String> testClasses = new ArrayList<>();
+        for (Class<?> c : testsToRun.getLocatedClasses()) {
+            configBuilder.addForceLinkClass(c.getName());
+            testClasses.add(c.getName());
+        }
+        configBuilder.skipInstall(true);
+        configBuilder.threads(getCompilerThreads());
+        // Fixed tmp dir so the test binary can be reused by later runs. The
+        // surefire forks of a run (forkCount > 1) get different test classes
+        // and build concurrently, so each set of classes gets a dir of its own
+        Collections.sort(testClasses);
+        String tests = new BuildFingerprint().add("tests", testClasses).getHash().substring(0, 12);
+        configBuilder.tmpDir(new File(basedir, "target/bugvm-test-" + tests + ".tmp"));
+
+        return configBuilder;
+    }
+
+    /**
+     * Collects the classpath of the test binary the first time it's needed.
+     * Later runners reuse it.
+     */
+    private synchronized ClasspathSnapshot getClasspath() throws IOException {
+        if (classpath != null) {
+            return classpath;
+        }
+        ClasspathSnapshot snapshot = new ClasspathSnapshot();
+        snapshot.add(resolve("com.bugvm:bugvm-junit-server:" + Version.getVersion(), false));
         if(isIOS()) {
-            configBuilder.addClasspathEntry(roboVMResolver.resolveArtifact("com.bugvm:bugvm-rt:" + Version.getVersion()).asFile());
-            configBuilder.addClasspathEntry(roboVMResolver.resolveArtifact("com.bugvm:bugvm-objc:" + Version.getVersion()).asFile());
-            configBuilder.addClasspathEntry(roboVMResolver.resolveArtifact("com.bugvm:bugvm-cocoatouch:" + Version.getVersion()).asFile());
+            snapshot.add(resolve("com.bugvm:bugvm-rt:" + Version.getVersion(), false));
+            snapshot.add(resolve("com.bugvm:bugvm-objc:" + Version.getVersion(), false));
+            snapshot.add(resolve("com.bugvm:bugvm-cocoatouch:" + Version.getVersion(), false));
         }
         for (String p : System.getProperty("java.class.path").split(File.pathSeparator)) {
-            configBuilder.addClasspathEntry(new File(p));
+            snapshot.add(new File(p));
         }
 
         if (testClassLoader.getClass().getName().equals("org.apache.maven.surefire.booter.IsolatedClassLoader")) {
             // Not fork mode. We need to get to the URLs of the IsolatedClassLoader.
-            // Only way is to use reflection.
-            try {
-                Field f = testClassLoader.getClass().getDeclaredField("urls");
-                f.setAccessible(true);
-                @SuppressWarnings("unchecked")
-                Collection<URL> urls = (Collection<URL>) f.get(testClassLoader);
-                for (URL url :urls) {
-                    File file = new File(url.getFile());
-                    if (file.isDirectory() || file.getName().toLowerCase().matches(".*\\.(jar|zip)$")) {
-                        configBuilder.addClasspathEntry(file);
-                    }
+            for (URL url : getIsolatedClassLoaderURLs()) {
+                File file = new File(url.getFile());
+                if (file.isDirectory() || file.getName().toLowerCase().matches(".*\\.(jar|zip)$")) {
+                    snapshot.add(file);
                 }
-            } catch (Throwable t) {
-                throw new RuntimeException("Failed to get classpath URLs from IsolatedClassLoader using reflection", t);
             }
         } else {
             Properties props = providerParameters.getProviderProperties();
@@ -395,16 +929,68 @@ public class BugVMSurefireProvider extends AbstractProvider {
                 if (path == null) {
                     break;
                 }
-                configBuilder.addClasspathEntry(new File(path));
+                snapshot.add(new File(path));
             }
         }
 
-        for (Class<?> c : testsToRun.getLocatedClasses()) {
-            configBuilder.addForceLinkClass(c.getName());
+        getLogger().debug("Test classpath has %d entries (dropped %d duplicate and %d missing entries)",
+                snapshot.getEntries().size(), snapshot.getDuplicates(), snapshot.getMissing());
+        classpath = snapshot;
+        return classpath;
+    }
+
+    /**
+     * Resolves an artifact, or unpacks the bugvm-dist if {@code dist} is
+     * {@code true}, unless the file resolved by an earlier run is still
+     * there and unchanged. Snapshots are always resolved again, see
+     * {@link ResolutionCache}.
+     */
+    private synchronized File resolve(String coords, boolean dist) throws IOException {
+        if (resolutionCache == null) {
+            resolutionCache = new ResolutionCache(new File(System.getProperty("user.home"),
+                    ".bugvm/surefire-resolution-cache.properties"));
         }
-        configBuilder.skipInstall(true);
+        File f = resolutionCache.get(coords);
+        if (f != null) {
+            getLogger().debug("Using previously resolved %s: %s", coords, f);
+            return f;
+        }
+        if (resolver == null) {
+            final Logger logger = getLogger();
+            resolver = new BugVMResolver();
+            resolver.setLogger(new com.bugvm.maven.resolver.Logger() {
+                public void info(String logLine) {
+                    logger.info(logLine);
+                }
+                public void debug(String logLine) {
+                    logger.debug(logLine);
+                }
+            });
+        }
+        f = dist ? resolver.resolveAndUnpackBugVMDistArtifact(coords.substring(DIST_COORDS.length()))
+                : resolver.resolveArtifact(coords).asFile();
+        try {
+            resolutionCache.put(coords, f);
+        } catch (IOException e) {
+            getLogger().warn("Failed to update the artifact resolution cache: %s", e.getMessage());
+        }
+        return f;
+    }
 
-        return configBuilder;
+    private Collection<URL> getIsolatedClassLoaderURLs() {
+        if (testClassLoader instanceof URLClassLoader) {
+            return Arrays.asList(((URLClassLoader) testClassLoader).getURLs());
+        }
+        // Older surefire versions. Only way is to use reflection.
+        try {
+            Field f = testClassLoader.getClass().getDeclaredField("urls");
+            f.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            Collection<URL> urls = (Collection<URL>) f.get(testClassLoader);
+            return urls;
+        } catch (Throwable t) {
+            throw new RuntimeException("Failed to get classpath URLs from IsolatedClassLoader using reflection", t);
+        }
     }
 
     private RunNotifier getRunNotifier(org.junit.runner.notification.RunListener main, Result result,
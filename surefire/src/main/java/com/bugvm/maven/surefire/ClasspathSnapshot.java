@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 BugVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classpath of the test binary. Entries are kept in the order they were
+ * added. Entries which don't exist and entries pointing to the same file as
+ * an earlier entry are dropped so the compiler doesn't scan any jar more than
+ * once.
+ */
+public class ClasspathSnapshot {
+    private final Map<String, File> entries = new LinkedHashMap<>();
+    private int duplicates;
+    private int missing;
+
+    public ClasspathSnapshot add(File file) {
+        if (!file.exists()) {
+            missing++;
+            return this;
+        }
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            key = file.getAbsolutePath();
+        }
+        if (entries.containsKey(key)) {
+            duplicates++;
+        } else {
+            entries.put(key, file);
+        }
+        return this;
+    }
+
+    public List<File> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns the number of entries dropped since they had already been
+     * added.
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of entries dropped since they don't exist.
+     */
+    public int getMissing() {
+        return missing;
+    }
+}
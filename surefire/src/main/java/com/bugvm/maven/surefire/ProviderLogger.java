@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 BugVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import org.apache.maven.surefire.report.ConsoleLogger;
+import com.bugvm.compiler.log.Logger;
+
+/**
+ * Passes BugVM compiler log messages on to the surefire {@link ConsoleLogger}.
+ * Debug messages are dropped without being formatted unless debug logging
+ * is enabled. Enabled debug messages are buffered and written in batches,
+ * the buffer is flushed before any other message is written.
+ */
+public class ProviderLogger implements Logger {
+    private static final int MAX_BUFFERED_LINES = 64;
+
+    private final ConsoleLogger consoleLogger;
+    private final boolean debugEnabled;
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedLines;
+
+    public ProviderLogger(ConsoleLogger consoleLogger, boolean debugEnabled) {
+        this.consoleLogger = consoleLogger;
+        this.debugEnabled = debugEnabled;
+    }
+
+    public void debug(String format, Object... args) {
+        if (debugEnabled) {
+            synchronized (this) {
+                buffer.append("[DEBUG] ").append(format(format, args)).append('\n');
+                if (++bufferedLines >= MAX_BUFFERED_LINES) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    public void info(String format, Object... args) {
+        write("[INFO] ", format, args);
+    }
+
+    public void warn(String format, Object... args) {
+        write("[WARNING] ", format, args);
+    }
+
+    public void error(String format, Object... args) {
+        write("[ERROR] ", format, args);
+    }
+
+    private synchronized void write(String prefix, String format, Object... args) {
+        buffer.append(prefix).append(format(format, args)).append('\n');
+        flush();
+    }
+
+    /**
+     * Writes any buffered debug messages.
+     */
+    public synchronized void flush() {
+        if (buffer.length() > 0) {
+            consoleLogger.info(buffer.toString());
+            buffer.setLength(0);
+            bufferedLines = 0;
+        }
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(format, args);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 BugVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Remembers where artifacts were resolved to in previous test runs so the
+ * resolver doesn't have to be asked again. Files are stored with their size,
+ * last modification time and SHA-1. A cached file is used as long as it
+ * exists and hasn't been modified. Directories, e.g. the unpacked
+ * bugvm-dist, are only checked for existence and last modification time.
+ * Snapshot versions are never cached: a newer snapshot may have been
+ * published since the last run, which only the resolver can tell.
+ * The index is written to a temp file which is then renamed so concurrent
+ * test runs never see a partially written index.
+ */
+public class ResolutionCache {
+    private final File file;
+    private final Properties index = new Properties();
+
+    public ResolutionCache(File file) {
+        this.file = file;
+        load(index);
+    }
+
+    private void load(Properties props) {
+        if (file.exists()) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    props.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                props.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached file or directory of {@code coords} or {@code null}
+     * if there is none or it has changed since it was cached.
+     */
+    public synchronized File get(String coords) {
+        if (isSnapshot(coords)) {
+            return null;
+        }
+        String path = index.getProperty(coords + ".path");
+        if (path == null) {
+            return null;
+        }
+        File f = new File(path);
+        if (!f.exists() || !String.valueOf(f.lastModified()).equals(index.getProperty(coords + ".lastModified"))) {
+            return null;
+        }
+        if (f.isDirectory()) {
+            return f;
+        }
+        if (!String.valueOf(f.length()).equals(index.getProperty(coords + ".size"))) {
+            return null;
+        }
+        try {
+            return checksum(f).equals(index.getProperty(coords + ".sha1")) ? f : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public synchronized void put(String coords, File f) throws IOException {
+        if (isSnapshot(coords)) {
+            return;
+        }
+        // Merge with entries written by other test runs since we loaded
+        Properties props = new Properties();
+        load(props);
+        props.putAll(index);
+        props.setProperty(coords + ".path", f.getAbsolutePath());
+        props.setProperty(coords + ".lastModified", String.valueOf(f.lastModified()));
+        if (f.isFile()) {
+            props.setProperty(coords + ".size", String.valueOf(f.length()));
+            props.setProperty(coords + ".sha1", checksum(f));
+        }
+        index.clear();
+        index.putAll(props);
+
+        file.getParentFile().mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                index.store(out, "BugVM artifact resolution cache");
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the version of {@code coords}, e.g.
+     * {@code com.bugvm:bugvm-rt:1.0.10-SNAPSHOT}, is a snapshot version.
+     */
+    static boolean isSnapshot(String coords) {
+        return coords.endsWith("-SNAPSHOT");
+    }
+
+    private static String checksum(File f) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 BugVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Forwards events to a {@link RunListener} while holding a lock, so that
+ * listeners which aren't thread safe can be shared by several concurrently
+ * running test runners.
+ */
+public class SynchronizedRunListener extends RunListener {
+    private final RunListener listener;
+    private final Object lock;
+
+    public SynchronizedRunListener(RunListener listener, Object lock) {
+        this.listener = listener;
+        this.lock = lock;
+    }
+
+    public void testRunStarted(Description description) throws Exception {
+        synchronized (lock) {
+            listener.testRunStarted(description);
+        }
+    }
+
+    public void testRunFinished(Result result) throws Exception {
+        synchronized (lock) {
+            listener.testRunFinished(result);
+        }
+    }
+
+    public void testStarted(Description description) throws Exception {
+        synchronized (lock) {
+            listener.testStarted(description);
+        }
+    }
+
+    public void testFinished(Description description) throws Exception {
+        synchronized (lock) {
+            listener.testFinished(description);
+        }
+    }
+
+    public void testFailure(Failure failure) throws Exception {
+        synchronized (lock) {
+            listener.testFailure(failure);
+        }
+    }
+
+    public void testAssumptionFailure(Failure failure) {
+        synchronized (lock) {
+            listener.testAssumptionFailure(failure);
+        }
+    }
+
+    public void testIgnored(Description description) throws Exception {
+        synchronized (lock) {
+            listener.testIgnored(description);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 BugVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugvm.maven.surefire;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Durations of test classes from previous runs, stored in a properties file.
+ * Used to run the slowest classes first. With several runners taking classes
+ * from a shared queue this also balances the runners, since the short
+ * classes at the end fill the gaps left by the long ones.
+ */
+public class TestDurations {
+    private final File file;
+    private final Properties durations = new Properties();
+
+    public TestDurations(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    durations.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Start over
+                durations.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the duration of {@code className} in the last run or -1 if
+     * unknown.
+     */
+    public long get(String className) {
+        String value = durations.getProperty(className);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+            }
+        }
+        return -1;
+    }
+
+    public void record(String className, long millis) {
+        durations.setProperty(className, String.valueOf(millis));
+    }
+
+    /**
+     * Returns the specified classes ordered by decreasing duration. Classes
+     * without a recorded duration come first since they may be slow.
+     */
+    public List<Class<?>> slowestFirst(Iterable<Class<?>> classes) {
+        List<Class<?>> result = new ArrayList<>();
+        for (Class<?> c : classes) {
+            result.add(c);
+        }
+        Collections.sort(result, new Comparator<Class<?>>() {
+            public int compare(Class<?> c1, Class<?> c2) {
+                long d1 = get(c1.getName());
+                long d2 = get(c2.getName());
+                d1 = d1 < 0 ? Long.MAX_VALUE : d1;
+                d2 = d2 < 0 ? Long.MAX_VALUE : d2;
+                return Long.compare(d2, d1);
+            }
+        });
+        return result;
+    }
+
+    public void save() throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            durations.store(out, "BugVM test class durations in milliseconds");
+        } finally {
+            out.close();
+        }
+    }
+}